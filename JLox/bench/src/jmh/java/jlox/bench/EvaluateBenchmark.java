@@ -0,0 +1,40 @@
+package jlox.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Evaluation only: the program is parsed and resolved once, then run by a
+// fresh tree-walking Interpreter per invocation with its output discarded.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluateBenchmark {
+	@Param({ "arithmetic", "strings", "nesting" })
+	public String program;
+
+	private Object statements;
+
+	@Setup
+	public void setUp() throws Throwable {
+		statements = Phases.resolve(Phases.parse(Phases.scan(Sources.load(program))));
+	}
+
+	@Benchmark
+	public void interpret() throws Throwable {
+		Phases.interpret(statements);
+	}
+}
@@ -0,0 +1,48 @@
+package jlox.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Parsing only: the tokens are scanned once up front, so this measures
+// building the tree (plus materializing tokens for the TokenBuffer variant).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+	@Param({ "arithmetic", "strings", "nesting" })
+	public String program;
+
+	private Object tokens;
+	private Object tokenBuffer;
+
+	@Setup
+	public void setUp() throws Throwable {
+		String source = Sources.load(program);
+		tokens = Phases.scan(source);
+		tokenBuffer = Phases.scanToBuffer(source);
+	}
+
+	@Benchmark
+	public Object fromTokens() throws Throwable {
+		return Phases.parse(tokens);
+	}
+
+	@Benchmark
+	public Object fromTokenBuffer() throws Throwable {
+		return Phases.parse(tokenBuffer);
+	}
+}
@@ -0,0 +1,102 @@
+package jlox.bench;
+
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.List;
+
+/*
+ * The interpreter lives in the unnamed package, which Java code in a named
+ * package (as JMH requires benchmarks to be) can't refer to. Each phase is
+ * therefore bound once through method handles; calling one costs next to
+ * nothing compared to the work it measures.
+ */
+final class Phases {
+	private static final MethodHandle NEW_SCANNER;
+	private static final MethodHandle SCAN_TOKENS;
+	private static final MethodHandle SCAN_TOKEN_BUFFER;
+	private static final MethodHandle NEW_LIST_PARSER;
+	private static final MethodHandle NEW_BUFFER_PARSER;
+	private static final MethodHandle PARSE;
+	private static final MethodHandle NEW_RESOLVER;
+	private static final MethodHandle RESOLVE;
+	private static final MethodHandle NEW_OUTPUT;
+	private static final MethodHandle NEW_INTERPRETER;
+	private static final MethodHandle INTERPRET;
+
+	static {
+		try {
+			Class<?> scanner = Class.forName("Scanner");
+			Class<?> tokenBuffer = Class.forName("TokenBuffer");
+			Class<?> parser = Class.forName("Parser");
+			Class<?> resolver = Class.forName("Resolver");
+			Class<?> output = Class.forName("Output");
+			Class<?> interpreter = Class.forName("Interpreter");
+			NEW_SCANNER = constructor(scanner, String.class);
+			SCAN_TOKENS = method(scanner, "scanTokens");
+			SCAN_TOKEN_BUFFER = method(scanner, "scanTokenBuffer");
+			NEW_LIST_PARSER = constructor(parser, List.class);
+			NEW_BUFFER_PARSER = constructor(parser, tokenBuffer);
+			PARSE = method(parser, "parse");
+			NEW_RESOLVER = constructor(resolver);
+			RESOLVE = method(resolver, "resolve", List.class);
+			NEW_OUTPUT = constructor(output, Writer.class, int.class);
+			NEW_INTERPRETER = constructor(interpreter, output);
+			INTERPRET = method(interpreter, "interpret", List.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private Phases() {
+	}
+
+	private static MethodHandle constructor(Class<?> owner, Class<?>... parameters)
+			throws ReflectiveOperationException {
+		Constructor<?> constructor = owner.getDeclaredConstructor(parameters);
+		constructor.setAccessible(true);
+		MethodHandle handle = MethodHandles.lookup().unreflectConstructor(constructor);
+		return handle.asType(handle.type().generic());
+	}
+
+	private static MethodHandle method(Class<?> owner, String name, Class<?>... parameters)
+			throws ReflectiveOperationException {
+		Method method = owner.getDeclaredMethod(name, parameters);
+		method.setAccessible(true);
+		MethodHandle handle = MethodHandles.lookup().unreflect(method);
+		return handle.asType(handle.type().generic().changeReturnType(
+				method.getReturnType() == void.class ? void.class : Object.class));
+	}
+
+	// List<Token>
+	static Object scan(String source) throws Throwable {
+		return SCAN_TOKENS.invokeExact(NEW_SCANNER.invokeExact((Object) source));
+	}
+
+	// TokenBuffer
+	static Object scanToBuffer(String source) throws Throwable {
+		return SCAN_TOKEN_BUFFER.invokeExact(NEW_SCANNER.invokeExact((Object) source));
+	}
+
+	// List<Stmt>, from either of the above.
+	static Object parse(Object tokens) throws Throwable {
+		MethodHandle newParser = tokens instanceof List ? NEW_LIST_PARSER : NEW_BUFFER_PARSER;
+		return PARSE.invokeExact(newParser.invokeExact(tokens));
+	}
+
+	// Resolves the statements in place and returns them.
+	static Object resolve(Object statements) throws Throwable {
+		RESOLVE.invokeExact(NEW_RESOLVER.invokeExact(), statements);
+		return statements;
+	}
+
+	// Runs resolved statements in a fresh Interpreter whose output is
+	// discarded.
+	static void interpret(Object statements) throws Throwable {
+		Object output = NEW_OUTPUT.invokeExact((Object) Writer.nullWriter(), (Object) 8192);
+		INTERPRET.invokeExact(NEW_INTERPRETER.invokeExact(output), statements);
+	}
+}
@@ -0,0 +1,44 @@
+package jlox.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Lexing only: source text to tokens, as Token objects and as a TokenBuffer.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScanBenchmark {
+	@Param({ "arithmetic", "strings", "nesting" })
+	public String program;
+
+	private String source;
+
+	@Setup
+	public void setUp() {
+		source = Sources.load(program);
+	}
+
+	@Benchmark
+	public Object tokens() throws Throwable {
+		return Phases.scan(source);
+	}
+
+	@Benchmark
+	public Object tokenBuffer() throws Throwable {
+		return Phases.scanToBuffer(source);
+	}
+}
@@ -0,0 +1,24 @@
+package jlox.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+// The representative programs under src/jmh/resources/lox, by name.
+final class Sources {
+	private Sources() {
+	}
+
+	static String load(String name) {
+		String path = "/lox/" + name + ".lox";
+		try (InputStream in = Sources.class.getResourceAsStream(path)) {
+			if (in == null) {
+				throw new IllegalArgumentException("No benchmark program " + path);
+			}
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,174 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+/*
+ * Parsed programs saved on disk, one file per distinct source, so running an
+ * unchanged script again skips the Scanner and Parser. Entries are named by a
+ * SHA-256 of the source bytes and the charset they're decoded with, and
+ * start with a header carrying AstSerializer.FORMAT_VERSION; an entry from
+ * another version, or one that can't be read back, counts as a miss and is
+ * replaced.
+ *
+ * The directory is kept under maxBytes: each hit touches its entry's
+ * modification time, and every store deletes the least recently used
+ * entries until what's left fits.
+ *
+ * The cache is only an optimization: every I/O problem with it is ignored.
+ */
+public class AstCache {
+	private static final int MAGIC = 0x4A4C4158; // "JLAX"
+	static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+	private final Path directory;
+	private final long maxBytes;
+
+	public AstCache(Path directory) {
+		this(directory, DEFAULT_MAX_BYTES);
+	}
+
+	public AstCache(Path directory, long maxBytes) {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+	}
+
+	// $JLOX_CACHE_DIR if set, otherwise ~/.cache/jlox.
+	static Path defaultDirectory() {
+		String configured = System.getenv("JLOX_CACHE_DIR");
+		if (configured != null && !configured.isEmpty()) {
+			return Paths.get(configured);
+		}
+		return Paths.get(System.getProperty("user.home"), ".cache", "jlox");
+	}
+
+	// Hashes the file in fixed-size chunks, so it's never held in memory
+	// whole. Returns null if it can't be read.
+	String key(Path source, Charset charset) {
+		try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(charset.name().getBytes(StandardCharsets.US_ASCII));
+			digest.update((byte) 0);
+			ByteBuffer chunk = ByteBuffer.allocateDirect(64 * 1024);
+			while (channel.read(chunk) >= 0) {
+				chunk.flip();
+				digest.update(chunk);
+				chunk.clear();
+			}
+			return HexFormat.of().formatHex(digest.digest());
+		} catch (IOException | NoSuchAlgorithmException e) {
+			return null;
+		}
+	}
+
+	// Returns null on a miss. Identifiers are interned into symbols.
+	AstSerializer.Tree load(String key, Symbols symbols) {
+		Path entry = entry(key);
+		AstSerializer.Tree tree;
+		try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+			ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (in.remaining() < 8 || in.getInt() != MAGIC || in.getInt() != AstSerializer.FORMAT_VERSION) {
+				return null;
+			}
+			tree = AstSerializer.read(in, symbols);
+		} catch (IOException e) {
+			// Missing or unreadable.
+			return null;
+		} catch (RuntimeException | InternalError | StackOverflowError e) {
+			// Corrupt however it fails to decode (InternalError is a mapped
+			// file truncated under us): drop it and parse again.
+			delete(entry);
+			return null;
+		}
+		try {
+			Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException e) {
+			// Still a hit; the entry just ages as if unused.
+		}
+		return tree;
+	}
+
+	private static void delete(Path file) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException ignored) {
+		}
+	}
+
+	// Written to a temporary file and moved into place, so a concurrent run
+	// never sees half an entry.
+	void store(String key, List<Stmt> statements) {
+		Path temporary = null;
+		try {
+			Files.createDirectories(directory);
+			temporary = Files.createTempFile(directory, key, ".tmp");
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+				ByteBuffer header = ByteBuffer.allocate(8).putInt(MAGIC).putInt(AstSerializer.FORMAT_VERSION).flip();
+				ByteBuffer body = AstSerializer.write(statements);
+				while (header.hasRemaining() || body.hasRemaining()) {
+					channel.write(new ByteBuffer[] { header, body });
+				}
+			}
+			Files.move(temporary, entry(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			evict();
+		} catch (IOException | UnsupportedOperationException e) {
+			if (temporary != null) {
+				delete(temporary);
+			}
+		}
+	}
+
+	// Deletes entries, oldest first, until the rest take at most maxBytes.
+	// Another run may be evicting at the same time, so entries that are
+	// already gone are skipped.
+	void evict() throws IOException {
+		record Entry(Path path, long size, FileTime used) {
+		}
+		List<Entry> entries = new ArrayList<>();
+		long total = 0;
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path path : (Iterable<Path>) files::iterator) {
+				if (!path.getFileName().toString().endsWith(".ast")) {
+					continue;
+				}
+				try {
+					BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+					entries.add(new Entry(path, attributes.size(), attributes.lastModifiedTime()));
+					total += attributes.size();
+				} catch (NoSuchFileException e) {
+				}
+			}
+		}
+		if (total <= maxBytes) {
+			return;
+		}
+		entries.sort(Comparator.comparing(Entry::used));
+		for (Entry entry : entries) {
+			if (total <= maxBytes) {
+				break;
+			}
+			Files.deleteIfExists(entry.path);
+			total -= entry.size;
+		}
+	}
+
+	private Path entry(String key) {
+		return directory.resolve(key + ".ast");
+	}
+}
@@ -0,0 +1,453 @@
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Compact binary form of parsed (not yet resolved) Stmt/Expr trees, used by
+ * AstCache. Every node is a tag byte followed by its fields in declaration
+ * order; a Token is its type ordinal, lexeme, literal and line. Strings go
+ * through a pool: the first occurrence is written out after its new index,
+ * later ones are just the index, so each distinct name is decoded (and
+ * interned) once per load. Fields the later passes fill in are not written,
+ * so a tree read back must be resolved like a freshly parsed one.
+ *
+ * Any change to this layout, to TokenType or to the node classes has to bump
+ * FORMAT_VERSION so older cache entries are ignored.
+ */
+public class AstSerializer implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+	static final int FORMAT_VERSION = 2;
+
+	private static final TokenType[] TYPES = TokenType.values();
+
+	// Node tags.
+	private static final int NULL = 0;
+	private static final int BLOCK = 1;
+	private static final int EXPRESSION = 2;
+	private static final int IF = 3;
+	private static final int PRINT = 4;
+	private static final int VAR = 5;
+	private static final int WHILE = 6;
+	private static final int ASSIGN = 7;
+	private static final int BINARY = 8;
+	private static final int GROUPING = 9;
+	private static final int LITERAL = 10;
+	private static final int LOGICAL = 11;
+	private static final int VARIABLE = 12;
+	private static final int UNARY = 13;
+
+	// Literal tags.
+	private static final int NIL_VALUE = 0;
+	private static final int NUMBER_VALUE = 1;
+	private static final int STRING_VALUE = 2;
+	private static final int TRUE_VALUE = 3;
+	private static final int FALSE_VALUE = 4;
+
+	private ByteBuffer out = ByteBuffer.allocate(4096);
+	private final Map<String, Integer> strings = new HashMap<>();
+
+	private AstSerializer() {
+	}
+
+	// The returned buffer is flipped, ready to be written out.
+	static ByteBuffer write(List<Stmt> statements) {
+		AstSerializer serializer = new AstSerializer();
+		serializer.writeInt(statements.size());
+		for (Stmt statement : statements) {
+			serializer.write(statement);
+		}
+		return serializer.out.flip();
+	}
+
+	// A tree read back, with the number of nodes in it for the metrics.
+	record Tree(List<Stmt> statements, long nodes) {
+	}
+
+	// Throws IllegalArgumentException if the data isn't a complete, well-formed
+	// tree. Identifiers get their ids from symbols.
+	static Tree read(ByteBuffer in, Symbols symbols) {
+		try {
+			Decoder decoder = new Decoder(in, symbols);
+			List<Stmt> statements = decoder.statements();
+			if (in.hasRemaining()) {
+				throw new IllegalArgumentException("Trailing data.");
+			}
+			return new Tree(statements, decoder.nodes);
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException("Truncated data.", e);
+		}
+	}
+
+	private void write(Stmt stmt) {
+		if (stmt == null) {
+			writeByte(NULL);
+		} else {
+			stmt.accept(this);
+		}
+	}
+
+	private void write(Expr expr) {
+		if (expr == null) {
+			writeByte(NULL);
+		} else {
+			expr.accept(this);
+		}
+	}
+
+	private void write(Token token) {
+		writeByte(token.type.ordinal());
+		writeString(token.lexeme);
+		writeValue(token.literal);
+		writeInt(token.line);
+	}
+
+	private void writeValue(Object value) {
+		if (value == null) {
+			writeByte(NIL_VALUE);
+		} else if (value instanceof Double) {
+			writeByte(NUMBER_VALUE);
+			ensure(8);
+			out.putDouble((double) value);
+		} else if (value instanceof Boolean) {
+			writeByte((boolean) value ? TRUE_VALUE : FALSE_VALUE);
+		} else {
+			writeByte(STRING_VALUE);
+			writeString((String) value);
+		}
+	}
+
+	private void writeString(String value) {
+		Integer index = strings.get(value);
+		if (index != null) {
+			writeInt(index);
+			return;
+		}
+		writeInt(strings.size());
+		strings.put(value, strings.size());
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeInt(bytes.length);
+		ensure(bytes.length);
+		out.put(bytes);
+	}
+
+	private void writeByte(int value) {
+		ensure(1);
+		out.put((byte) value);
+	}
+
+	private void writeInt(int value) {
+		ensure(4);
+		out.putInt(value);
+	}
+
+	private void ensure(int bytes) {
+		if (out.remaining() < bytes) {
+			ByteBuffer grown = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + bytes));
+			grown.put(out.flip());
+			out = grown;
+		}
+	}
+
+	private static class Decoder {
+		private final ByteBuffer in;
+		private final Symbols symbols;
+		private final List<String> strings = new ArrayList<>();
+		// Symbols id per pooled string, looked up the first time an
+		// identifier uses it; -1 until then.
+		private int[] ids = new int[64];
+		// Nodes decoded so far.
+		long nodes = 0;
+
+		Decoder(ByteBuffer in, Symbols symbols) {
+			this.in = in;
+			this.symbols = symbols;
+			Arrays.fill(ids, -1);
+		}
+
+		List<Stmt> statements() {
+			int count = count();
+			List<Stmt> statements = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				statements.add(stmt());
+			}
+			return statements;
+		}
+
+		private Stmt stmt() {
+			int tag = in.get() & 0xff;
+			if (tag != NULL) {
+				nodes++;
+			}
+			switch (tag) {
+				case NULL:
+					return null;
+				case BLOCK:
+					return new Stmt.Block(statements());
+				case EXPRESSION:
+					return new Stmt.Expression(expr());
+				case IF: {
+					Expr condition = expr();
+					Stmt thenBranch = stmt();
+					return new Stmt.If(condition, thenBranch, stmt());
+				}
+				case PRINT:
+					return new Stmt.Print(expr());
+				case VAR: {
+					Token name = token();
+					return new Stmt.Var(name, expr());
+				}
+				case WHILE: {
+					Expr condition = expr();
+					return new Stmt.While(condition, stmt());
+				}
+			}
+			throw new IllegalArgumentException("Bad statement tag " + tag + ".");
+		}
+
+		private Expr expr() {
+			int tag = in.get() & 0xff;
+			if (tag != NULL) {
+				nodes++;
+			}
+			switch (tag) {
+				case NULL:
+					return null;
+				case ASSIGN: {
+					Token name = token();
+					return new Expr.Assign(name, expr());
+				}
+				case BINARY: {
+					Expr left = expr();
+					Token operator = token();
+					return new Expr.Binary(left, operator, expr());
+				}
+				case GROUPING:
+					return new Expr.Grouping(expr());
+				case LITERAL: {
+					Expr.Literal literal = new Expr.Literal(value());
+					literal.line = in.getInt();
+					return literal;
+				}
+				case LOGICAL: {
+					Expr left = expr();
+					Token operator = token();
+					return new Expr.Logical(left, operator, expr());
+				}
+				case VARIABLE:
+					return new Expr.Variable(token());
+				case UNARY: {
+					Token operator = token();
+					return new Expr.Unary(operator, expr());
+				}
+			}
+			throw new IllegalArgumentException("Bad expression tag " + tag + ".");
+		}
+
+		private Token token() {
+			int ordinal = in.get() & 0xff;
+			if (ordinal >= TYPES.length) {
+				throw new IllegalArgumentException("Bad token type " + ordinal + ".");
+			}
+			TokenType type = TYPES[ordinal];
+			int index = stringIndex();
+			Object literal = value();
+			int line = in.getInt();
+			if (type != TokenType.IDENTIFIER) {
+				return new Token(type, strings.get(index), literal, line, -1);
+			}
+			if (ids[index] < 0) {
+				ids[index] = symbols.intern(strings.get(index));
+				// The canonical String, so identifiers share it as scanned
+				// ones do.
+				strings.set(index, symbols.name(ids[index]));
+			}
+			return new Token(type, strings.get(index), literal, line, ids[index]);
+		}
+
+		private Object value() {
+			int tag = in.get() & 0xff;
+			switch (tag) {
+				case NIL_VALUE:
+					return null;
+				case NUMBER_VALUE:
+					return in.getDouble();
+				case STRING_VALUE:
+					return strings.get(stringIndex());
+				case TRUE_VALUE:
+					return true;
+				case FALSE_VALUE:
+					return false;
+			}
+			throw new IllegalArgumentException("Bad value tag " + tag + ".");
+		}
+
+		// Reads a pool index, decoding the string itself on first use.
+		private int stringIndex() {
+			int index = in.getInt();
+			if (index < strings.size() && index >= 0) {
+				return index;
+			}
+			if (index != strings.size()) {
+				throw new IllegalArgumentException("Bad string index " + index + ".");
+			}
+			int length = count();
+			byte[] bytes = new byte[length];
+			in.get(bytes);
+			strings.add(new String(bytes, StandardCharsets.UTF_8));
+			if (index == ids.length) {
+				ids = Arrays.copyOf(ids, index * 2);
+				Arrays.fill(ids, index, ids.length, -1);
+			}
+			return index;
+		}
+
+		private int count() {
+			int count = in.getInt();
+			if (count < 0 || count > in.remaining()) {
+				throw new IllegalArgumentException("Bad count " + count + ".");
+			}
+			return count;
+		}
+	}
+
+	@Override
+	public Void visitBlockStmt(Stmt.Block stmt) {
+		writeByte(BLOCK);
+		writeInt(stmt.statements.size());
+		for (Stmt statement : stmt.statements) {
+			write(statement);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitExpressionStmt(Stmt.Expression stmt) {
+		writeByte(EXPRESSION);
+		write(stmt.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitIfStmt(Stmt.If stmt) {
+		writeByte(IF);
+		write(stmt.condition);
+		write(stmt.thenBranch);
+		write(stmt.elseBranch);
+		return null;
+	}
+
+	@Override
+	public Void visitPrintStmt(Stmt.Print stmt) {
+		writeByte(PRINT);
+		write(stmt.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitVarStmt(Stmt.Var stmt) {
+		writeByte(VAR);
+		write(stmt.name);
+		write(stmt.initializer);
+		return null;
+	}
+
+	@Override
+	public Void visitWhileStmt(Stmt.While stmt) {
+		writeByte(WHILE);
+		write(stmt.condition);
+		write(stmt.body);
+		return null;
+	}
+
+	@Override
+	public Void visitNumericWhileStmt(Stmt.NumericWhile stmt) {
+		write(stmt.loop);
+		return null;
+	}
+
+	@Override
+	public Void visitAssignExpr(Expr.Assign expr) {
+		writeByte(ASSIGN);
+		write(expr.name);
+		write(expr.value);
+		return null;
+	}
+
+	@Override
+	public Void visitBinaryExpr(Expr.Binary expr) {
+		writeByte(BINARY);
+		write(expr.left);
+		write(expr.operator);
+		write(expr.right);
+		return null;
+	}
+
+	@Override
+	public Void visitGroupingExpr(Expr.Grouping expr) {
+		writeByte(GROUPING);
+		write(expr.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitLiteralExpr(Expr.Literal expr) {
+		writeByte(LITERAL);
+		writeValue(expr.value);
+		writeInt(expr.line);
+		return null;
+	}
+
+	@Override
+	public Void visitLogicalExpr(Expr.Logical expr) {
+		writeByte(LOGICAL);
+		write(expr.left);
+		write(expr.operator);
+		write(expr.right);
+		return null;
+	}
+
+	@Override
+	public Void visitVariableExpr(Expr.Variable expr) {
+		writeByte(VARIABLE);
+		write(expr.name);
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryExpr(Expr.Unary expr) {
+		writeByte(UNARY);
+		write(expr.operator);
+		write(expr.right);
+		return null;
+	}
+
+	// Only parsed trees are cached, so the nodes the optimizing passes add
+	// never get here; should one, it's written as the node it wraps.
+	@Override
+	public Void visitInvariantExpr(Expr.Invariant expr) {
+		write(expr.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitIncrementExpr(Expr.Increment expr) {
+		write(expr.assign);
+		return null;
+	}
+
+	@Override
+	public Void visitCompareVariablesExpr(Expr.CompareVariables expr) {
+		write(expr.binary);
+		return null;
+	}
+
+	@Override
+	public Void visitCompareConstantExpr(Expr.CompareConstant expr) {
+		write(expr.binary);
+		return null;
+	}
+}
@@ -0,0 +1,165 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
+
+/*
+ * --batch: runs a whole directory (or manifest) of scripts in one JVM, so
+ * startup and warm-up are paid once rather than per file. Scripts are split
+ * across a fork-join pool; each one is scanned, parsed and executed in a
+ * LoxSession of its own, with its output and errors captured separately and
+ * reported in input order once everything has run. A script that blows up
+ * the runner itself (a stack overflow, say) fails on its own, like one with
+ * a runtime error, without taking the rest of the batch down.
+ */
+public class BatchRunner implements AutoCloseable {
+	// Reported for a script that couldn't be read, as sysexits' EX_NOINPUT.
+	static final int UNREADABLE = 66;
+
+	static class Outcome {
+		final Path script;
+		// Null if the script couldn't be read.
+		final LoxEngine.Result result;
+		final String output;
+		final String errors;
+		final long nanos;
+
+		Outcome(Path script, LoxEngine.Result result, String output, String errors, long nanos) {
+			this.script = script;
+			this.result = result;
+			this.output = output;
+			this.errors = errors;
+			this.nanos = nanos;
+		}
+
+		int exitCode() {
+			return result != null ? result.exitCode : UNREADABLE;
+		}
+	}
+
+	private final LoxEngine engine;
+	private final Charset charset;
+	private final ForkJoinPool pool;
+
+	public BatchRunner(LoxEngine engine, Charset charset, int parallelism) {
+		this.engine = engine;
+		this.charset = charset;
+		this.pool = new ForkJoinPool(parallelism);
+	}
+
+	// Every .lox file under a directory, in path order, or the files a
+	// manifest lists one per line (relative to the manifest; blank lines and
+	// lines starting with # are skipped).
+	static List<Path> scripts(Path target) throws IOException {
+		List<Path> scripts = new ArrayList<>();
+		if (Files.isDirectory(target)) {
+			try (Stream<Path> files = Files.walk(target)) {
+				files.filter(file -> file.toString().endsWith(".lox") && Files.isRegularFile(file)).sorted()
+						.forEach(scripts::add);
+			}
+			return scripts;
+		}
+		Path base = target.toAbsolutePath().getParent();
+		for (String line : Files.readAllLines(target, Charset.defaultCharset())) {
+			line = line.strip();
+			if (!line.isEmpty() && !line.startsWith("#")) {
+				scripts.add(base.resolve(line));
+			}
+		}
+		return scripts;
+	}
+
+	public List<Outcome> run(List<Path> scripts) {
+		Outcome[] outcomes = new Outcome[scripts.size()];
+		if (!scripts.isEmpty()) {
+			pool.invoke(new Batch(scripts, outcomes, 0, scripts.size()));
+		}
+		return Arrays.asList(outcomes);
+	}
+
+	// Halves its range until it's down to one script.
+	private class Batch extends RecursiveAction {
+		private final List<Path> scripts;
+		private final Outcome[] outcomes;
+		private final int start;
+		private final int end;
+
+		Batch(List<Path> scripts, Outcome[] outcomes, int start, int end) {
+			this.scripts = scripts;
+			this.outcomes = outcomes;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start == 1) {
+				outcomes[start] = runScript(scripts.get(start));
+				return;
+			}
+			int middle = (start + end) >>> 1;
+			invokeAll(new Batch(scripts, outcomes, start, middle), new Batch(scripts, outcomes, middle, end));
+		}
+	}
+
+	private Outcome runScript(Path script) {
+		StringWriter output = new StringWriter();
+		StringWriter errors = new StringWriter();
+		Output printed = new Output(output);
+		long start = System.nanoTime();
+		LoxEngine.Result result;
+		try {
+			result = engine.open(printed, errors).runFile(script, charset);
+		} catch (IOException e) {
+			errors.write("Could not read " + script + ": " + e + System.lineSeparator());
+			result = null;
+		} catch (StackOverflowError e) {
+			printed.flush();
+			errors.write("Stack overflow in " + script + "." + System.lineSeparator());
+			result = LoxEngine.Result.RUNTIME_ERROR;
+		} catch (RuntimeException e) {
+			printed.flush();
+			errors.write("Failed to run " + script + ": " + e + System.lineSeparator());
+			result = LoxEngine.Result.RUNTIME_ERROR;
+		}
+		return new Outcome(script, result, output.toString(), errors.toString(), System.nanoTime() - start);
+	}
+
+	@Override
+	public void close() {
+		pool.shutdown();
+	}
+
+	// Each script's output and errors under a header, then one line per
+	// script with its exit status and time. Returns the highest exit code.
+	static int report(List<Outcome> outcomes, PrintStream out, PrintStream err) {
+		int exitCode = 0;
+		long nanos = 0;
+		for (Outcome outcome : outcomes) {
+			out.println("==> " + outcome.script + " <==");
+			out.print(outcome.output);
+			out.flush();
+			err.print(outcome.errors);
+			err.flush();
+			exitCode = Math.max(exitCode, outcome.exitCode());
+			nanos += outcome.nanos;
+		}
+		out.println();
+		for (Outcome outcome : outcomes) {
+			String status = outcome.result != null ? outcome.result.name() : "UNREADABLE";
+			out.println(String.format("%4d %-14s %10.2f ms  %s", outcome.exitCode(), status, outcome.nanos / 1e6,
+					outcome.script));
+		}
+		long failed = outcomes.stream().filter(outcome -> outcome.exitCode() != 0).count();
+		out.println(String.format("%d scripts, %d failed, %.2f ms of script time", outcomes.size(), failed, nanos / 1e6));
+		return exitCode;
+	}
+}
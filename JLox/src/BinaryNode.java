@@ -0,0 +1,150 @@
+/*
+ * Runtime specialization of an Expr.Binary site. A site starts out with no
+ * node; the first evaluation picks one based on the operator and the operand
+ * types it actually saw. Each specialized node guards its assumption and, when
+ * the guard fails, rewrites the site to the generic node for good.
+ */
+abstract class BinaryNode {
+
+	abstract Object execute(Expr.Binary site, Object left, Object right);
+
+	static Object specializeAndExecute(Expr.Binary site, Object left, Object right) {
+		BinaryNode node = select(site.operator.type, left, right);
+		site.specialized = node;
+		return node.execute(site, left, right);
+	}
+
+	private static BinaryNode select(TokenType operator, Object left, Object right) {
+		boolean numbers = left instanceof Double && right instanceof Double;
+		switch (operator) {
+			case TokenType.PLUS:
+				if (numbers) {
+					return new NumberAdd();
+				}
+				if (left instanceof CharSequence && right instanceof CharSequence) {
+					return new StringConcat();
+				}
+				break;
+			case TokenType.MINUS:
+				if (numbers) {
+					return new NumberSubtract();
+				}
+				break;
+			case TokenType.STAR:
+				if (numbers) {
+					return new NumberMultiply();
+				}
+				break;
+			case TokenType.SLASH:
+				if (numbers) {
+					return new NumberDivide();
+				}
+				break;
+			case TokenType.LESS:
+			case TokenType.LESS_EQUAL:
+			case TokenType.GREATER:
+			case TokenType.GREATER_EQUAL:
+				if (numbers) {
+					return new NumberCompare(operator);
+				}
+				break;
+		}
+		return new Generic();
+	}
+
+	// Called when a guard fails: the site has seen more than one shape.
+	static Object generalize(Expr.Binary site, Object left, Object right) {
+		BinaryNode node = new Generic();
+		site.specialized = node;
+		return node.execute(site, left, right);
+	}
+
+	static class Generic extends BinaryNode {
+		@Override
+		Object execute(Expr.Binary site, Object left, Object right) {
+			return Interpreter.binary(site.operator, left, right);
+		}
+	}
+
+	static class NumberAdd extends BinaryNode {
+		@Override
+		Object execute(Expr.Binary site, Object left, Object right) {
+			if (left instanceof Double && right instanceof Double) {
+				return (double) left + (double) right;
+			}
+			return generalize(site, left, right);
+		}
+	}
+
+	static class StringConcat extends BinaryNode {
+		@Override
+		Object execute(Expr.Binary site, Object left, Object right) {
+			if (left instanceof CharSequence && right instanceof CharSequence) {
+				return Rope.concat((CharSequence) left, (CharSequence) right);
+			}
+			return generalize(site, left, right);
+		}
+	}
+
+	static class NumberSubtract extends BinaryNode {
+		@Override
+		Object execute(Expr.Binary site, Object left, Object right) {
+			if (left instanceof Double && right instanceof Double) {
+				return (double) left - (double) right;
+			}
+			return generalize(site, left, right);
+		}
+	}
+
+	static class NumberMultiply extends BinaryNode {
+		@Override
+		Object execute(Expr.Binary site, Object left, Object right) {
+			if (left instanceof Double && right instanceof Double) {
+				return (double) left * (double) right;
+			}
+			return generalize(site, left, right);
+		}
+	}
+
+	// Division by zero isn't a type change, so it reports the error without
+	// giving up the specialization.
+	static class NumberDivide extends BinaryNode {
+		@Override
+		Object execute(Expr.Binary site, Object left, Object right) {
+			if (left instanceof Double && right instanceof Double) {
+				if ((double) right == 0) {
+					throw new RuntimeError(site.operator, "Cannot divide by zero.");
+				}
+				return (double) left / (double) right;
+			}
+			return generalize(site, left, right);
+		}
+	}
+
+	static class NumberCompare extends BinaryNode {
+		private final TokenType operator;
+
+		NumberCompare(TokenType operator) {
+			this.operator = operator;
+		}
+
+		@Override
+		Object execute(Expr.Binary site, Object left, Object right) {
+			if (left instanceof Double && right instanceof Double) {
+				double a = (double) left;
+				double b = (double) right;
+				switch (operator) {
+					case TokenType.LESS:
+						return a < b;
+					case TokenType.LESS_EQUAL:
+						return a <= b;
+					case TokenType.GREATER:
+						return a > b;
+					default:
+						return a >= b;
+				}
+			}
+			return generalize(site, left, right);
+		}
+	}
+}
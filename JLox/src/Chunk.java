@@ -0,0 +1,39 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * A compiled program: a flat instruction stream, the constant pool it indexes
+ * into, and for every instruction the Token it came from so runtime errors
+ * report the same line as the tree walker.
+ */
+public class Chunk {
+	int[] code = new int[64];
+	Token[] tokens = new Token[64];
+	int count = 0;
+	private final List<Object> constantList = new ArrayList<>();
+	Object[] constants;
+	// Frame slots and operand stack depth the VM has to allocate.
+	int maxLocals = 0;
+	int maxStack = 0;
+
+	int write(int value, Token token) {
+		if (count == code.length) {
+			code = Arrays.copyOf(code, count * 2);
+			tokens = Arrays.copyOf(tokens, count * 2);
+		}
+		code[count] = value;
+		tokens[count] = token;
+		return count++;
+	}
+
+	int addConstant(Object value) {
+		constantList.add(value);
+		return constantList.size() - 1;
+	}
+
+	// Called once compilation is done so the VM can index a plain array.
+	void seal() {
+		constants = constantList.toArray();
+	}
+}
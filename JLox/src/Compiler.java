@@ -0,0 +1,269 @@
+import java.util.List;
+
+/*
+ * Lowers resolved Stmt/Expr trees into a Chunk for the VM. A local's
+ * Resolver slot is already its index in the program's frame, so blocks
+ * compile to nothing of their own.
+ */
+public class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+	private final Chunk chunk = new Chunk();
+	private int stackDepth = 0;
+
+	Chunk compile(List<Stmt> statements) {
+		for (Stmt statement : statements) {
+			compile(statement);
+		}
+		emit(OpCode.RETURN, null, 0);
+		chunk.seal();
+		return chunk;
+	}
+
+	private void compile(Stmt stmt) {
+		stmt.accept(this);
+	}
+
+	private void compile(Expr expr) {
+		expr.accept(this);
+	}
+
+	private void emit(int op, Token token, int stackEffect) {
+		chunk.write(op, token);
+		stackDepth += stackEffect;
+		if (stackDepth > chunk.maxStack) {
+			chunk.maxStack = stackDepth;
+		}
+	}
+
+	private void emit(int op, int operand, Token token, int stackEffect) {
+		emit(op, token, stackEffect);
+		chunk.write(operand, token);
+	}
+
+	private int emitJump(int op) {
+		emit(op, null, 0);
+		return chunk.write(0, null);
+	}
+
+	private void patchJump(int operandOffset) {
+		chunk.code[operandOffset] = chunk.count - operandOffset - 1;
+	}
+
+	private void emitLoop(int loopStart) {
+		emit(OpCode.LOOP, null, 0);
+		chunk.write(chunk.count - loopStart + 1, null);
+	}
+
+	@Override
+	public Void visitBlockStmt(Stmt.Block stmt) {
+		for (Stmt statement : stmt.statements) {
+			compile(statement);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitExpressionStmt(Stmt.Expression stmt) {
+		compile(stmt.expression);
+		emit(OpCode.POP, null, -1);
+		return null;
+	}
+
+	@Override
+	public Void visitIfStmt(Stmt.If stmt) {
+		compile(stmt.condition);
+		int thenJump = emitJump(OpCode.JUMP_IF_FALSE);
+		emit(OpCode.POP, null, -1);
+		compile(stmt.thenBranch);
+		int elseJump = emitJump(OpCode.JUMP);
+		patchJump(thenJump);
+		// The false path still has the condition on the stack.
+		stackDepth++;
+		emit(OpCode.POP, null, -1);
+		if (stmt.elseBranch != null) {
+			compile(stmt.elseBranch);
+		}
+		patchJump(elseJump);
+		return null;
+	}
+
+	@Override
+	public Void visitPrintStmt(Stmt.Print stmt) {
+		compile(stmt.expression);
+		emit(OpCode.PRINT, null, -1);
+		return null;
+	}
+
+	@Override
+	public Void visitVarStmt(Stmt.Var stmt) {
+		if (stmt.initializer != null) {
+			compile(stmt.initializer);
+		} else {
+			emit(OpCode.NIL, null, 1);
+		}
+		if (stmt.slot >= 0) {
+			if (stmt.slot >= chunk.maxLocals) {
+				chunk.maxLocals = stmt.slot + 1;
+			}
+			emit(OpCode.DEFINE_LOCAL, stmt.slot, stmt.name, -1);
+		} else {
+			emit(OpCode.DEFINE_GLOBAL, chunk.addConstant(stmt.name), stmt.name, -1);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitWhileStmt(Stmt.While stmt) {
+		int loopStart = chunk.count;
+		compile(stmt.condition);
+		int exitJump = emitJump(OpCode.JUMP_IF_FALSE);
+		emit(OpCode.POP, null, -1);
+		compile(stmt.body);
+		emitLoop(loopStart);
+		patchJump(exitJump);
+		stackDepth++;
+		emit(OpCode.POP, null, -1);
+		return null;
+	}
+
+	@Override
+	public Void visitNumericWhileStmt(Stmt.NumericWhile stmt) {
+		compile(stmt.loop);
+		return null;
+	}
+
+	@Override
+	public Void visitAssignExpr(Expr.Assign expr) {
+		compile(expr.value);
+		if (expr.depth >= 0) {
+			emit(OpCode.SET_LOCAL, expr.slot, expr.name, 0);
+		} else {
+			emit(OpCode.SET_GLOBAL, chunk.addConstant(expr.name), expr.name, 0);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitBinaryExpr(Expr.Binary expr) {
+		compile(expr.left);
+		compile(expr.right);
+		switch (expr.operator.type) {
+			case TokenType.GREATER:
+				emit(OpCode.GREATER, expr.operator, -1);
+				break;
+			case TokenType.GREATER_EQUAL:
+				emit(OpCode.GREATER_EQUAL, expr.operator, -1);
+				break;
+			case TokenType.LESS:
+				emit(OpCode.LESS, expr.operator, -1);
+				break;
+			case TokenType.LESS_EQUAL:
+				emit(OpCode.LESS_EQUAL, expr.operator, -1);
+				break;
+			case TokenType.MINUS:
+				emit(OpCode.SUBTRACT, expr.operator, -1);
+				break;
+			case TokenType.NOT_EQUAL:
+				emit(OpCode.NOT_EQUAL, expr.operator, -1);
+				break;
+			case TokenType.EQUAL_EQUAL:
+				emit(OpCode.EQUAL, expr.operator, -1);
+				break;
+			case TokenType.PLUS:
+				emit(OpCode.ADD, expr.operator, -1);
+				break;
+			case TokenType.SLASH:
+				emit(OpCode.DIVIDE, expr.operator, -1);
+				break;
+			case TokenType.STAR:
+				emit(OpCode.MULTIPLY, expr.operator, -1);
+				break;
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitGroupingExpr(Expr.Grouping expr) {
+		compile(expr.expression);
+		return null;
+	}
+
+	// The VM simply recomputes loop invariants.
+	@Override
+	public Void visitInvariantExpr(Expr.Invariant expr) {
+		compile(expr.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitIncrementExpr(Expr.Increment expr) {
+		compile(expr.assign);
+		return null;
+	}
+
+	@Override
+	public Void visitCompareVariablesExpr(Expr.CompareVariables expr) {
+		compile(expr.binary);
+		return null;
+	}
+
+	@Override
+	public Void visitCompareConstantExpr(Expr.CompareConstant expr) {
+		compile(expr.binary);
+		return null;
+	}
+
+	@Override
+	public Void visitLiteralExpr(Expr.Literal expr) {
+		if (expr.value == null) {
+			emit(OpCode.NIL, null, 1);
+		} else if (expr.value.equals(true)) {
+			emit(OpCode.TRUE, null, 1);
+		} else if (expr.value.equals(false)) {
+			emit(OpCode.FALSE, null, 1);
+		} else {
+			emit(OpCode.CONSTANT, chunk.addConstant(expr.value), null, 1);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitLogicalExpr(Expr.Logical expr) {
+		compile(expr.left);
+		if (expr.operator.type == TokenType.OR) {
+			int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+			int endJump = emitJump(OpCode.JUMP);
+			patchJump(elseJump);
+			emit(OpCode.POP, null, -1);
+			compile(expr.right);
+			patchJump(endJump);
+		} else {
+			int endJump = emitJump(OpCode.JUMP_IF_FALSE);
+			emit(OpCode.POP, null, -1);
+			compile(expr.right);
+			patchJump(endJump);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitVariableExpr(Expr.Variable expr) {
+		if (expr.depth >= 0) {
+			emit(OpCode.GET_LOCAL, expr.slot, expr.name, 1);
+		} else {
+			emit(OpCode.GET_GLOBAL, chunk.addConstant(expr.name), expr.name, 1);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryExpr(Expr.Unary expr) {
+		compile(expr.right);
+		if (expr.operator.type == TokenType.NOT) {
+			emit(OpCode.NOT, expr.operator, 0);
+		} else {
+			emit(OpCode.NEGATE, expr.operator, 0);
+		}
+		return null;
+	}
+}
@@ -1,42 +1,48 @@
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
+/*
+ * The global variables, keyed by their names' ids in the owning session's
+ * Symbols. Locals never get here: they live in frame slots assigned by the
+ * Resolver.
+ */
 public class Environment {
 
-	final Environment enclosing;
-	private final Map<String, Object> values = new HashMap<>();
+	// Marks a global id that has never been defined, as opposed to one whose
+	// value is nil.
+	private static final Object UNDEFINED = new Object();
 
-	public Environment() {
-		enclosing = null;
-	}
-
-	public Environment(Environment enclosing) {
-		this.enclosing = enclosing;
-	}
+	private Object[] values = new Object[0];
 
 	Object get(Token name) {
-		if (values.containsKey(name.lexeme)) {
-			return values.get(name.lexeme);
-		}
-		if (enclosing != null) {
-			return enclosing.get(name);
+		if (name.symbol < values.length) {
+			Object value = values[name.symbol];
+			if (value != UNDEFINED) {
+				return value;
+			}
 		}
 		throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
 	}
 
 	public void assign(Token name, Object value) {
-		if (values.containsKey(name.lexeme)) {
-			values.put(name.lexeme, value);
-			return;
-		}
-		if (enclosing != null) {
-			enclosing.assign(name, value);
+		if (name.symbol < values.length && values[name.symbol] != UNDEFINED) {
+			values[name.symbol] = value;
 			return;
 		}
 		throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
 	}
 
-	public void define(String name, Object value) {
-		values.put(name, value);
+	void define(Token name, Object value) {
+		define(name.symbol, value);
+	}
+
+	private void define(int symbol, Object value) {
+		if (symbol >= values.length) {
+			int length = values.length;
+			// Ids cover every name the session has seen, not just globals;
+			// grow only as far as the ids actually defined.
+			values = Arrays.copyOf(values, Math.max(symbol + 1, length * 2));
+			Arrays.fill(values, length, values.length, UNDEFINED);
+		}
+		values[symbol] = value;
 	}
 }
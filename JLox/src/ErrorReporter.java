@@ -0,0 +1,77 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/*
+ * Collects the errors of one run and writes them to its error sink, in the
+ * formats scripts and tests depend on. Each Scanner, Parser and engine
+ * reports to the ErrorReporter it was given, so runs on different threads
+ * never see each other's errors.
+ *
+ * Every message is flushed as it's written, to stay in order with printed
+ * output (which is flushed before a runtime error is reported).
+ */
+public class ErrorReporter {
+	private static final String LINE_SEPARATOR = System.lineSeparator();
+
+	// Null for System.err.
+	private final Writer errors;
+	boolean hadError = false;
+	boolean hadRuntimeError = false;
+
+	public ErrorReporter() {
+		this(null);
+	}
+
+	public ErrorReporter(Writer errors) {
+		this.errors = errors;
+	}
+
+	void error(int line, String message) {
+		report(line, "", message);
+	}
+
+	void error(Token token, String message) {
+		if (token.type == TokenType.EOF) {
+			report(token.line, " at end", message);
+		} else {
+			report(token.line, " at '" + token.lexeme + "'", message);
+		}
+	}
+
+	void runtimeError(RuntimeError error) {
+		LoxMetrics.INSTANCE.runtimeError();
+		write(error.getMessage() + "\n[line " + error.token.line + "]");
+		hadRuntimeError = true;
+	}
+
+	// Tells the user something without failing the run.
+	void warning(String message) {
+		write("Warning: " + message);
+	}
+
+	// Forgets the errors reported so far, e.g. between REPL lines.
+	void reset() {
+		hadError = false;
+		hadRuntimeError = false;
+	}
+
+	private void report(int line, String where, String message) {
+		write("[line " + line + "] Error" + where + ": " + message);
+		hadError = true;
+	}
+
+	private void write(String message) {
+		if (errors == null) {
+			System.err.println(message);
+			return;
+		}
+		try {
+			errors.write(message);
+			errors.write(LINE_SEPARATOR);
+			errors.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -15,6 +15,14 @@ public abstract class Expr {
 		R visitVariableExpr(Variable expr);
 
 		R visitUnaryExpr(Unary expr);
+
+		R visitInvariantExpr(Invariant expr);
+
+		R visitIncrementExpr(Increment expr);
+
+		R visitCompareVariablesExpr(CompareVariables expr);
+
+		R visitCompareConstantExpr(CompareConstant expr);
 	}
 
 	public static class Assign extends Expr {
@@ -30,6 +38,9 @@ public abstract class Expr {
 
 		final Token name;
 		final Expr value;
+
+		int depth = -1;
+		int slot = -1;
 	}
 
 	public static class Binary extends Expr {
@@ -47,6 +58,8 @@ public abstract class Expr {
 		final Expr left;
 		final Token operator;
 		final Expr right;
+
+		BinaryNode specialized = null;
 	}
 
 	public static class Grouping extends Expr {
@@ -73,6 +86,8 @@ public abstract class Expr {
 		}
 
 		final Object value;
+
+		int line = 0;
 	}
 
 	public static class Logical extends Expr {
@@ -103,6 +118,9 @@ public abstract class Expr {
 		}
 
 		final Token name;
+
+		int depth = -1;
+		int slot = -1;
 	}
 
 	public static class Unary extends Expr {
@@ -118,6 +136,75 @@ public abstract class Expr {
 
 		final Token operator;
 		final Expr right;
+
+		UnaryNode specialized = null;
+	}
+
+	public static class Invariant extends Expr {
+		Invariant(Expr expression) {
+			this.expression = expression;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitInvariantExpr(this);
+		}
+
+		final Expr expression;
+
+		Object value = null;
+		boolean cached = false;
+	}
+
+	public static class Increment extends Expr {
+		Increment(Assign assign, Variable variable, double delta) {
+			this.assign = assign;
+			this.variable = variable;
+			this.delta = delta;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitIncrementExpr(this);
+		}
+
+		final Assign assign;
+		final Variable variable;
+		final double delta;
+	}
+
+	public static class CompareVariables extends Expr {
+		CompareVariables(Binary binary, Variable left, Variable right) {
+			this.binary = binary;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitCompareVariablesExpr(this);
+		}
+
+		final Binary binary;
+		final Variable left;
+		final Variable right;
+	}
+
+	public static class CompareConstant extends Expr {
+		CompareConstant(Binary binary, Variable left, double right) {
+			this.binary = binary;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitCompareConstantExpr(this);
+		}
+
+		final Binary binary;
+		final Variable left;
+		final double right;
 	}
 
 	abstract <R> R accept(Visitor<R> visitor);
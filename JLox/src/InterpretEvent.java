@@ -0,0 +1,25 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Flight Recorder event for running one parsed program, resolver and
+// optimizer passes included.
+@Name("jlox.Interpret")
+@Label("Interpret")
+@Category("JLox")
+@Description("Running a parsed Lox program")
+public class InterpretEvent extends jdk.jfr.Event {
+	@Label("Script")
+	String script;
+
+	@Label("Engine")
+	String engine;
+
+	@Label("Statements Executed")
+	@Description("Counted by the tree walker only; -1 for programs run by the vm or jit engine")
+	long statements;
+
+	@Label("Runtime Error")
+	boolean failed;
+}
@@ -1,16 +1,60 @@
+import java.util.Arrays;
 import java.util.List;
 
 public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
-	private Environment environment = new Environment();
+	final Environment globals = new Environment();
+	// Every local of the running program, at the slot the Resolver gave it.
+	// Blocks allocate nothing. The frame is allocated when the first local is
+	// declared and only regrown (framesAllocated counts both) when a program
+	// declares more locals than any before it; it's cleared after each
+	// program.
+	private Object[] frame = new Object[0];
+	final Output output;
+	final ErrorReporter reporter;
+	// Running totals for LoxMetrics and the JFR events.
+	long statementsExecuted = 0;
+	long framesAllocated = 0;
 
+	public Interpreter() {
+		this(Output.stdout());
+	}
+
+	public Interpreter(Output output) {
+		this(output, new ErrorReporter());
+	}
+
+	public Interpreter(Output output, ErrorReporter reporter) {
+		this.output = output;
+		this.reporter = reporter;
+	}
+
+	// Printed lines are flushed before a runtime error is reported and once
+	// the program is done, so they stay in order with stderr and the prompt.
 	public void interpret(List<Stmt> statements) {
 		try {
 			for (Stmt statement : statements) {
 				execute(statement);
 			}
 		} catch (RuntimeError error) {
-			Lox.runtimeError(error);
+			output.flush();
+			reporter.runtimeError(error);
+		} finally {
+			Arrays.fill(frame, null);
+			output.flush();
+		}
+	}
+
+	// Runs a program compiled by JitCompiler against this interpreter's globals,
+	// so a REPL session can mix compiled and interpreted lines.
+	void interpret(JitCompiler.CompiledProgram program) {
+		try {
+			program.run(globals, output);
+		} catch (RuntimeError error) {
+			output.flush();
+			reporter.runtimeError(error);
+		} finally {
+			output.flush();
 		}
 	}
 
@@ -36,12 +80,20 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
 	@Override
 	public Object visitUnaryExpr(Expr.Unary expr) {
+		if (expr.operator.type == TokenType.MINUS) {
+			return negate(expr);
+		}
 		Object right = evaluate(expr.right);
-		switch (expr.operator.type) {
+		return unary(expr.operator, right);
+	}
+
+	// Generic unary semantics on an already evaluated operand.
+	static Object unary(Token operator, Object right) {
+		switch (operator.type) {
 			case TokenType.NOT:
 				return !isTruthy(right);
 			case TokenType.MINUS:
-				checkNumberOperand(expr.operator, right);
+				checkNumberOperand(operator, right);
 				return -(double) right;
 		}
 		return null;
@@ -49,17 +101,20 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
 	@Override
 	public Object visitVariableExpr(Expr.Variable expr) {
-		return environment.get(expr.name);
+		if (expr.depth >= 0) {
+			return frame[expr.slot];
+		}
+		return globals.get(expr.name);
 	}
 
-	private void checkNumberOperand(Token operator, Object operand) {
+	static void checkNumberOperand(Token operator, Object operand) {
 		if (operand instanceof Double) {
 			return;
 		}
 		throw new RuntimeError(operator, "Operand must be a number.");
 	}
 
-	private void checkNumberOperands(Token operator, Object left, Object right) {
+	static void checkNumberOperands(Token operator, Object left, Object right) {
 		if (left instanceof Double && right instanceof Double) {
 			return;
 		}
@@ -67,7 +122,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	}
 
 	// Follows Ruby's rule: false and nil -> falsey; everything else -> truthy.
-	private boolean isTruthy(Object object) {
+	static boolean isTruthy(Object object) {
 		if (object == null) {
 			return false;
 		}
@@ -77,7 +132,14 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		return true;
 	}
 
-	private boolean isEqual(Object obj1, Object obj2) {
+	// Ropes are compared by their characters, so they're flattened first.
+	static boolean isEqual(Object obj1, Object obj2) {
+		if (obj1 instanceof Rope) {
+			obj1 = obj1.toString();
+		}
+		if (obj2 instanceof Rope) {
+			obj2 = obj2.toString();
+		}
 		if (obj1 == null && obj2 == null) {
 			return true;
 		}
@@ -87,16 +149,12 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		return obj1.equals(obj2);
 	}
 
-	private String stringify(Object object) {
+	static String stringify(Object object) {
 		if (object == null) {
 			return "nil";
 		}
 		if (object instanceof Double) {
-			String text = object.toString();
-			if (text.endsWith(".0")) {
-				text = text.substring(0, text.length() - 2);
-			}
-			return text;
+			return NumberText.toString((double) object);
 		}
 		return object.toString();
 	}
@@ -106,29 +164,82 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		return evaluate(expr.expression);
 	}
 
-	public Object evaluate(Expr expr) {
-		return expr.accept(this);
+	// Loop-invariant subexpression: evaluated the first time it's reached after
+	// its loop is entered, then reused until the loop is entered again.
+	@Override
+	public Object visitInvariantExpr(Expr.Invariant expr) {
+		if (!expr.cached) {
+			expr.value = evaluate(expr.expression);
+			expr.cached = true;
+		}
+		return expr.value;
 	}
 
-	private void execute(Stmt stmt) {
-		stmt.accept(this);
+	// Superinstructions (see Superinstructions). Each reads its variables
+	// directly and, when an operand isn't a number, finishes on the generic
+	// path of the node it was made from.
+	@Override
+	public Object visitIncrementExpr(Expr.Increment expr) {
+		Object value = visitVariableExpr(expr.variable);
+		if (!(value instanceof Double)) {
+			return evaluate(expr.assign);
+		}
+		Object result = (double) value + expr.delta;
+		Expr.Assign assign = expr.assign;
+		if (assign.depth >= 0) {
+			frame[assign.slot] = result;
+		} else {
+			globals.assign(assign.name, result);
+		}
+		return result;
 	}
 
-	private void executeBlock(List<Stmt> statements, Environment environment) {
-		Environment previous = this.environment;
-		try {
-			this.environment = environment;
-			for (Stmt statement : statements) {
-				execute(statement);
-			}
-		} finally {
-			this.environment = previous;
+	@Override
+	public Object visitCompareVariablesExpr(Expr.CompareVariables expr) {
+		return test(expr);
+	}
+
+	@Override
+	public Object visitCompareConstantExpr(Expr.CompareConstant expr) {
+		return test(expr);
+	}
+
+	private boolean test(Expr.CompareVariables expr) {
+		Object left = visitVariableExpr(expr.left);
+		Object right = visitVariableExpr(expr.right);
+		if (left instanceof Double && right instanceof Double) {
+			return compare(expr.binary.operator.type, (double) left, (double) right);
 		}
+		return (boolean) binary(expr.binary.operator, left, right);
+	}
+
+	private boolean test(Expr.CompareConstant expr) {
+		Object left = visitVariableExpr(expr.left);
+		if (left instanceof Double) {
+			return compare(expr.binary.operator.type, (double) left, expr.right);
+		}
+		return (boolean) binary(expr.binary.operator, left, expr.right);
+	}
+
+	// evaluate() and execute() are the single entry points for running a node,
+	// which ProfilingInterpreter overrides to time them.
+	public Object evaluate(Expr expr) {
+		return expr.accept(this);
+	}
+
+	void execute(Stmt stmt) {
+		statementsExecuted++;
+		stmt.accept(this);
 	}
 
+	// Scoping was settled by the Resolver, so a block is just its statements.
+	// A Var always runs before anything in its block reads its slot, so a
+	// slot left over from an earlier block is never seen.
 	@Override
 	public Void visitBlockStmt(Stmt.Block stmt) {
-		executeBlock(stmt.statements, new Environment(environment));
+		for (Stmt statement : stmt.statements) {
+			execute(statement);
+		}
 		return null;
 	}
 
@@ -151,7 +262,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	@Override
 	public Void visitPrintStmt(Stmt.Print stmt) {
 		Object value = evaluate(stmt.expression);
-		System.out.println(stringify(value));
+		output.printValue(value);
 		return null;
 	}
 
@@ -161,44 +272,245 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		if (stmt.initializer != null) {
 			value = evaluate(stmt.initializer);
 		}
-		environment.define(stmt.name.lexeme, value);
+		if (stmt.slot >= 0) {
+			if (stmt.slot >= frame.length) {
+				framesAllocated++;
+				int size = Math.max(frame.length * 2, 16);
+				frame = Arrays.copyOf(frame, Math.max(size, stmt.slot + 1));
+			}
+			frame[stmt.slot] = value;
+		} else {
+			globals.define(stmt.name, value);
+		}
 		return null;
 	}
 
 	@Override
 	public Void visitWhileStmt(Stmt.While stmt) {
+		resetInvariants(stmt);
 		while (isTruthy(evaluate(stmt.condition))) {
 			execute(stmt.body);
 		}
 		return null;
 	}
 
+	// The condition is tested without going through evaluate() or boxing.
+	@Override
+	public Void visitNumericWhileStmt(Stmt.NumericWhile stmt) {
+		Stmt.While loop = stmt.loop;
+		resetInvariants(loop);
+		if (loop.condition instanceof Expr.CompareConstant condition) {
+			while (test(condition)) {
+				execute(loop.body);
+			}
+		} else {
+			Expr.CompareVariables condition = (Expr.CompareVariables) loop.condition;
+			while (test(condition)) {
+				execute(loop.body);
+			}
+		}
+		return null;
+	}
+
+	private static void resetInvariants(Stmt.While loop) {
+		if (loop.invariants != null) {
+			for (Expr.Invariant invariant : loop.invariants) {
+				invariant.cached = false;
+				invariant.value = null;
+			}
+		}
+	}
+
 	@Override
 	public Object visitAssignExpr(Expr.Assign expr) {
 		Object value = evaluate(expr.value);
-		environment.assign(expr.name, value);
+		if (expr.depth >= 0) {
+			frame[expr.slot] = value;
+		} else {
+			globals.assign(expr.name, value);
+		}
 		return value;
 	}
 
 	@Override
 	public Object visitBinaryExpr(Expr.Binary expr) {
+		switch (expr.operator.type) {
+			case TokenType.MINUS:
+			case TokenType.STAR:
+			case TokenType.SLASH:
+				return arithmetic(expr);
+			case TokenType.GREATER:
+			case TokenType.GREATER_EQUAL:
+			case TokenType.LESS:
+			case TokenType.LESS_EQUAL:
+				return compare(expr);
+			case TokenType.PLUS:
+				if (isArithmetic(expr.left) && isArithmetic(expr.right)) {
+					return arithmetic(expr);
+				}
+				// Either side may be a string, so binary() checks the
+				// operands' types instead of raising NotNumber for every
+				// concatenation.
+				return binary(expr.operator, operand(expr.left), operand(expr.right));
+		}
 		Object left = evaluate(expr.left);
 		Object right = evaluate(expr.right);
+		return binary(expr.operator, left, right);
+	}
+
+	// An arithmetic subexpression is still computed on primitive doubles and
+	// boxed once, at the end.
+	private Object operand(Expr expr) {
+		if (expr instanceof Expr.Literal || !isArithmetic(expr)) {
+			return evaluate(expr);
+		}
+		return evaluateNumber(expr);
+	}
+
+	// Thrown by evaluateNumber once an operand has been fully evaluated and
+	// turned out not to be a number. Only ever raised on the way to a
+	// RuntimeError, so it skips the stack trace.
+	private static class NotNumber extends RuntimeException {
+		final Object value;
+
+		NotNumber(Object value) {
+			super(null, null, false, false);
+			this.value = value;
+		}
+	}
+
+	// Evaluates an operand whose parent needs a number, keeping intermediate
+	// results as primitive doubles. Values are only boxed when they leave
+	// numeric context (stored, printed, compared with ==, concatenated).
+	private double evaluateNumber(Expr expr) {
+		if (expr instanceof Expr.Literal literal && literal.value instanceof Double) {
+			return (double) literal.value;
+		}
+		if (expr instanceof Expr.Binary binary) {
+			switch (binary.operator.type) {
+				case TokenType.MINUS:
+				case TokenType.STAR:
+				case TokenType.SLASH:
+				case TokenType.PLUS:
+					return arithmetic(binary);
+			}
+		} else if (expr instanceof Expr.Grouping grouping) {
+			return evaluateNumber(grouping.expression);
+		} else if (expr instanceof Expr.Unary unary && unary.operator.type == TokenType.MINUS) {
+			return negate(unary);
+		}
+		return toNumber(evaluate(expr));
+	}
+
+	// True for expressions that can only produce a number (or fail).
+	private static boolean isArithmetic(Expr expr) {
+		if (expr instanceof Expr.Literal literal) {
+			return literal.value instanceof Double;
+		}
+		if (expr instanceof Expr.Binary binary) {
+			TokenType type = binary.operator.type;
+			return type == TokenType.MINUS || type == TokenType.STAR || type == TokenType.SLASH;
+		}
+		if (expr instanceof Expr.Unary unary) {
+			return unary.operator.type == TokenType.MINUS;
+		}
+		if (expr instanceof Expr.Grouping grouping) {
+			return isArithmetic(grouping.expression);
+		}
+		return false;
+	}
+
+	private static double toNumber(Object value) {
+		if (value instanceof Double) {
+			return (double) value;
+		}
+		throw new NotNumber(value);
+	}
+
+	// When an operand isn't a number the rest of the expression is finished on
+	// the generic path, so evaluation order and error messages are unchanged.
+	private double arithmetic(Expr.Binary expr) {
+		double left;
+		try {
+			left = evaluateNumber(expr.left);
+		} catch (NotNumber e) {
+			return toNumber(binary(expr.operator, e.value, evaluate(expr.right)));
+		}
+		double right;
+		try {
+			right = evaluateNumber(expr.right);
+		} catch (NotNumber e) {
+			return toNumber(binary(expr.operator, left, e.value));
+		}
 		switch (expr.operator.type) {
+			case TokenType.MINUS:
+				return left - right;
+			case TokenType.STAR:
+				return left * right;
+			case TokenType.SLASH:
+				if (right == 0) {
+					throw new RuntimeError(expr.operator, "Cannot divide by zero.");
+				}
+				return left / right;
+			default:
+				return left + right;
+		}
+	}
+
+	private boolean compare(Expr.Binary expr) {
+		double left;
+		try {
+			left = evaluateNumber(expr.left);
+		} catch (NotNumber e) {
+			return (boolean) binary(expr.operator, e.value, evaluate(expr.right));
+		}
+		double right;
+		try {
+			right = evaluateNumber(expr.right);
+		} catch (NotNumber e) {
+			return (boolean) binary(expr.operator, left, e.value);
+		}
+		return compare(expr.operator.type, left, right);
+	}
+
+	private static boolean compare(TokenType type, double left, double right) {
+		switch (type) {
+			case TokenType.GREATER:
+				return left > right;
+			case TokenType.GREATER_EQUAL:
+				return left >= right;
+			case TokenType.LESS:
+				return left < right;
+			default:
+				return left <= right;
+		}
+	}
+
+	private double negate(Expr.Unary expr) {
+		try {
+			return -evaluateNumber(expr.right);
+		} catch (NotNumber e) {
+			return toNumber(unary(expr.operator, e.value));
+		}
+	}
+
+	// Generic binary semantics on already evaluated operands.
+	static Object binary(Token operator, Object left, Object right) {
+		switch (operator.type) {
 			case TokenType.GREATER:
-				checkNumberOperands(expr.operator, left, right);
+				checkNumberOperands(operator, left, right);
 				return (double) left > (double) right;
 			case TokenType.GREATER_EQUAL:
-				checkNumberOperands(expr.operator, left, right);
+				checkNumberOperands(operator, left, right);
 				return (double) left >= (double) right;
 			case TokenType.LESS:
-				checkNumberOperands(expr.operator, left, right);
+				checkNumberOperands(operator, left, right);
 				return (double) left < (double) right;
 			case TokenType.LESS_EQUAL:
-				checkNumberOperands(expr.operator, left, right);
+				checkNumberOperands(operator, left, right);
 				return (double) left <= (double) right;
 			case TokenType.MINUS:
-				checkNumberOperands(expr.operator, left, right);
+				checkNumberOperands(operator, left, right);
 				return (double) left - (double) right;
 			case TokenType.NOT_EQUAL:
 				return !isEqual(left, right);
@@ -209,22 +521,24 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 				if (left instanceof Double && right instanceof Double) {
 					return (double) left + (double) right;
 				}
-				if (left instanceof String && right instanceof String) {
-					return (String) left + (String) right;
+				if (left instanceof CharSequence && right instanceof CharSequence) {
+					return Rope.concat((CharSequence) left, (CharSequence) right);
 				}
-				if ((left instanceof String && right instanceof Double)
-						|| (left instanceof Double && right instanceof String)) {
-					return stringify(left) + stringify(right);
+				if (left instanceof CharSequence && right instanceof Double) {
+					return Rope.concat((CharSequence) left, stringify(right));
 				}
-				throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
+				if (left instanceof Double && right instanceof CharSequence) {
+					return Rope.concat(stringify(left), (CharSequence) right);
+				}
+				throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
 			case TokenType.SLASH:
-				checkNumberOperands(expr.operator, left, right);
+				checkNumberOperands(operator, left, right);
 				if ((double) right == 0) {
-					throw new RuntimeError(expr.operator, "Cannot divide by zero.");
+					throw new RuntimeError(operator, "Cannot divide by zero.");
 				}
 				return (double) left / (double) right;
 			case TokenType.STAR:
-				checkNumberOperands(expr.operator, left, right);
+				checkNumberOperands(operator, left, right);
 				return (double) left * (double) right;
 		}
 		return null;
@@ -0,0 +1,397 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/*
+ * Compiles a resolved program into a JVM class so HotSpot can optimize the
+ * Lox code itself instead of the tree walker. Bytecode is generated straight
+ * from the tree with ASM (block locals become JVM locals, operators become
+ * JitRuntime calls) and loaded through a throwaway ClassLoader; no Java
+ * source or system compiler is involved.
+ *
+ * compile() throws CannotCompile when the program can't be compiled - a
+ * construct it doesn't know, or a method over the JVM's 64KB limit - and the
+ * caller reports that and falls back to the tree walker.
+ */
+public class JitCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+	// Implemented by every generated class.
+	public interface Script {
+		void run(Environment globals, Object[] constants, Output output);
+	}
+
+	static class CannotCompile extends Exception {
+		CannotCompile(String message) {
+			super(message);
+		}
+	}
+
+	private static class Unsupported extends RuntimeException {
+		Unsupported(String message) {
+			super(message);
+		}
+	}
+
+	// Top-level statements per generated method, to stay clear of the JVM's
+	// method size limit.
+	private static final int STATEMENTS_PER_METHOD = 64;
+	private static final String RUNTIME = "JitRuntime";
+	private static final String OBJECT = "java/lang/Object";
+	private static final String PART = "(LEnvironment;[Ljava/lang/Object;LOutput;)V";
+	private static final String BINARY = "(Ljava/lang/Object;Ljava/lang/Object;LToken;)Ljava/lang/Object;";
+	// JVM locals of a part method: its three parameters, then the Lox frame,
+	// slot for slot.
+	private static final int GLOBALS = 0;
+	private static final int CONSTANTS = 1;
+	private static final int OUTPUT = 2;
+	private static final int FRAME = 3;
+	private static int classCounter = 0;
+
+	private final List<Object> constants = new ArrayList<>();
+	private MethodVisitor code;
+
+	static class CompiledProgram {
+		private final Script script;
+		private final Object[] constants;
+
+		CompiledProgram(Script script, Object[] constants) {
+			this.script = script;
+			this.constants = constants;
+		}
+
+		void run(Environment globals, Output output) {
+			script.run(globals, constants, output);
+		}
+	}
+
+	CompiledProgram compile(List<Stmt> statements) throws CannotCompile {
+		String className;
+		synchronized (JitCompiler.class) {
+			className = "LoxScript" + classCounter++;
+		}
+		byte[] bytes;
+		try {
+			bytes = generate(className, statements);
+		} catch (Unsupported e) {
+			throw new CannotCompile(e.getMessage());
+		} catch (IndexOutOfBoundsException e) {
+			// ASM's MethodTooLargeException and ClassTooLargeException.
+			throw new CannotCompile("the program is too large");
+		}
+		try {
+			Class<?> type = new ScriptLoader(className, bytes).loadClass(className);
+			Script script = (Script) type.getDeclaredConstructor().newInstance();
+			return new CompiledProgram(script, constants.toArray());
+		} catch (ReflectiveOperationException | LinkageError e) {
+			throw new CannotCompile(e.toString());
+		}
+	}
+
+	private byte[] generate(String className, List<Stmt> statements) {
+		ClassWriter out = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+			// Every value is handled as an Object, so that's all two merging
+			// types ever need to become; this also keeps ASM from loading
+			// classes to find out.
+			@Override
+			protected String getCommonSuperClass(String type1, String type2) {
+				return OBJECT;
+			}
+		};
+		out.visit(Opcodes.V21, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, className, null, OBJECT,
+				new String[] { "JitCompiler$Script" });
+
+		MethodVisitor init = out.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+		init.visitCode();
+		init.visitVarInsn(Opcodes.ALOAD, 0);
+		init.visitMethodInsn(Opcodes.INVOKESPECIAL, OBJECT, "<init>", "()V", false);
+		init.visitInsn(Opcodes.RETURN);
+		init.visitMaxs(0, 0);
+		init.visitEnd();
+
+		int parts = (statements.size() + STATEMENTS_PER_METHOD - 1) / STATEMENTS_PER_METHOD;
+		MethodVisitor run = out.visitMethod(Opcodes.ACC_PUBLIC, "run", PART, null, null);
+		run.visitCode();
+		for (int i = 0; i < parts; i++) {
+			run.visitVarInsn(Opcodes.ALOAD, GLOBALS + 1);
+			run.visitVarInsn(Opcodes.ALOAD, CONSTANTS + 1);
+			run.visitVarInsn(Opcodes.ALOAD, OUTPUT + 1);
+			run.visitMethodInsn(Opcodes.INVOKESTATIC, className, "part" + i, PART, false);
+		}
+		run.visitInsn(Opcodes.RETURN);
+		run.visitMaxs(0, 0);
+		run.visitEnd();
+
+		for (int i = 0; i < parts; i++) {
+			code = out.visitMethod(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC, "part" + i, PART, null, null);
+			code.visitCode();
+			int end = Math.min(statements.size(), (i + 1) * STATEMENTS_PER_METHOD);
+			for (Stmt statement : statements.subList(i * STATEMENTS_PER_METHOD, end)) {
+				statement.accept(this);
+			}
+			code.visitInsn(Opcodes.RETURN);
+			code.visitMaxs(0, 0);
+			code.visitEnd();
+		}
+		out.visitEnd();
+		return out.toByteArray();
+	}
+
+	private static class ScriptLoader extends ClassLoader {
+		private final String name;
+		private final byte[] bytes;
+
+		ScriptLoader(String name, byte[] bytes) {
+			super(JitCompiler.class.getClassLoader());
+			this.name = name;
+			this.bytes = bytes;
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			if (!name.equals(this.name)) {
+				throw new ClassNotFoundException(name);
+			}
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+
+	private void constant(Object value) {
+		constants.add(value);
+		code.visitVarInsn(Opcodes.ALOAD, CONSTANTS);
+		code.visitLdcInsn(constants.size() - 1);
+		code.visitInsn(Opcodes.AALOAD);
+	}
+
+	private void token(Token token) {
+		constant(token);
+		code.visitTypeInsn(Opcodes.CHECKCAST, "Token");
+	}
+
+	private void call(String method, String descriptor) {
+		code.visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME, method, descriptor, false);
+	}
+
+	// Leaves the truthiness of the value on top of the stack as an int.
+	private void isTruthy() {
+		call("isTruthy", "(Ljava/lang/Object;)Z");
+	}
+
+	@Override
+	public Void visitBlockStmt(Stmt.Block stmt) {
+		for (Stmt statement : stmt.statements) {
+			statement.accept(this);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitExpressionStmt(Stmt.Expression stmt) {
+		stmt.expression.accept(this);
+		code.visitInsn(Opcodes.POP);
+		return null;
+	}
+
+	@Override
+	public Void visitIfStmt(Stmt.If stmt) {
+		Label elseBranch = new Label();
+		Label end = new Label();
+		stmt.condition.accept(this);
+		isTruthy();
+		code.visitJumpInsn(Opcodes.IFEQ, elseBranch);
+		stmt.thenBranch.accept(this);
+		code.visitJumpInsn(Opcodes.GOTO, end);
+		code.visitLabel(elseBranch);
+		if (stmt.elseBranch != null) {
+			stmt.elseBranch.accept(this);
+		}
+		code.visitLabel(end);
+		return null;
+	}
+
+	@Override
+	public Void visitPrintStmt(Stmt.Print stmt) {
+		code.visitVarInsn(Opcodes.ALOAD, OUTPUT);
+		stmt.expression.accept(this);
+		call("print", "(LOutput;Ljava/lang/Object;)V");
+		return null;
+	}
+
+	@Override
+	public Void visitVarStmt(Stmt.Var stmt) {
+		if (stmt.slot < 0) {
+			code.visitVarInsn(Opcodes.ALOAD, GLOBALS);
+			token(stmt.name);
+		}
+		if (stmt.initializer != null) {
+			stmt.initializer.accept(this);
+		} else {
+			code.visitInsn(Opcodes.ACONST_NULL);
+		}
+		if (stmt.slot >= 0) {
+			code.visitVarInsn(Opcodes.ASTORE, FRAME + stmt.slot);
+		} else {
+			call("defineGlobal", "(LEnvironment;LToken;Ljava/lang/Object;)V");
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitWhileStmt(Stmt.While stmt) {
+		Label start = new Label();
+		Label end = new Label();
+		code.visitLabel(start);
+		stmt.condition.accept(this);
+		isTruthy();
+		code.visitJumpInsn(Opcodes.IFEQ, end);
+		stmt.body.accept(this);
+		code.visitJumpInsn(Opcodes.GOTO, start);
+		code.visitLabel(end);
+		return null;
+	}
+
+	@Override
+	public Void visitNumericWhileStmt(Stmt.NumericWhile stmt) {
+		return stmt.loop.accept(this);
+	}
+
+	@Override
+	public Void visitAssignExpr(Expr.Assign expr) {
+		if (expr.depth >= 0) {
+			expr.value.accept(this);
+			code.visitInsn(Opcodes.DUP);
+			code.visitVarInsn(Opcodes.ASTORE, FRAME + expr.slot);
+			return null;
+		}
+		code.visitVarInsn(Opcodes.ALOAD, GLOBALS);
+		token(expr.name);
+		expr.value.accept(this);
+		call("setGlobal", "(LEnvironment;LToken;Ljava/lang/Object;)Ljava/lang/Object;");
+		return null;
+	}
+
+	@Override
+	public Void visitBinaryExpr(Expr.Binary expr) {
+		expr.left.accept(this);
+		expr.right.accept(this);
+		String method;
+		switch (expr.operator.type) {
+			case TokenType.PLUS:
+				method = "add";
+				break;
+			case TokenType.MINUS:
+				method = "subtract";
+				break;
+			case TokenType.STAR:
+				method = "multiply";
+				break;
+			case TokenType.SLASH:
+				method = "divide";
+				break;
+			case TokenType.LESS:
+				method = "less";
+				break;
+			case TokenType.LESS_EQUAL:
+				method = "lessEqual";
+				break;
+			case TokenType.GREATER:
+				method = "greater";
+				break;
+			case TokenType.GREATER_EQUAL:
+				method = "greaterEqual";
+				break;
+			case TokenType.EQUAL_EQUAL:
+				call("equal", "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;");
+				return null;
+			case TokenType.NOT_EQUAL:
+				call("notEqual", "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;");
+				return null;
+			default:
+				throw new Unsupported("unsupported operator '" + expr.operator.lexeme + "'");
+		}
+		token(expr.operator);
+		call(method, BINARY);
+		return null;
+	}
+
+	@Override
+	public Void visitGroupingExpr(Expr.Grouping expr) {
+		return expr.expression.accept(this);
+	}
+
+	// HotSpot does its own loop-invariant code motion.
+	@Override
+	public Void visitInvariantExpr(Expr.Invariant expr) {
+		return expr.expression.accept(this);
+	}
+
+	@Override
+	public Void visitIncrementExpr(Expr.Increment expr) {
+		return expr.assign.accept(this);
+	}
+
+	@Override
+	public Void visitCompareVariablesExpr(Expr.CompareVariables expr) {
+		return expr.binary.accept(this);
+	}
+
+	@Override
+	public Void visitCompareConstantExpr(Expr.CompareConstant expr) {
+		return expr.binary.accept(this);
+	}
+
+	@Override
+	public Void visitLiteralExpr(Expr.Literal expr) {
+		if (expr.value == null) {
+			code.visitInsn(Opcodes.ACONST_NULL);
+		} else if (expr.value instanceof Boolean) {
+			code.visitFieldInsn(Opcodes.GETSTATIC, "java/lang/Boolean", (boolean) expr.value ? "TRUE" : "FALSE",
+					"Ljava/lang/Boolean;");
+		} else {
+			constant(expr.value);
+		}
+		return null;
+	}
+
+	// The left operand stays on the stack as the result unless it decides
+	// nothing, so it's evaluated exactly once.
+	@Override
+	public Void visitLogicalExpr(Expr.Logical expr) {
+		Label end = new Label();
+		expr.left.accept(this);
+		code.visitInsn(Opcodes.DUP);
+		isTruthy();
+		code.visitJumpInsn(expr.operator.type == TokenType.OR ? Opcodes.IFNE : Opcodes.IFEQ, end);
+		code.visitInsn(Opcodes.POP);
+		expr.right.accept(this);
+		code.visitLabel(end);
+		return null;
+	}
+
+	@Override
+	public Void visitVariableExpr(Expr.Variable expr) {
+		if (expr.depth >= 0) {
+			code.visitVarInsn(Opcodes.ALOAD, FRAME + expr.slot);
+			return null;
+		}
+		code.visitVarInsn(Opcodes.ALOAD, GLOBALS);
+		token(expr.name);
+		call("getGlobal", "(LEnvironment;LToken;)Ljava/lang/Object;");
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryExpr(Expr.Unary expr) {
+		expr.right.accept(this);
+		if (expr.operator.type == TokenType.NOT) {
+			call("not", "(Ljava/lang/Object;)Ljava/lang/Object;");
+			return null;
+		}
+		token(expr.operator);
+		call("negate", "(Ljava/lang/Object;LToken;)Ljava/lang/Object;");
+		return null;
+	}
+}
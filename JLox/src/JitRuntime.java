@@ -0,0 +1,106 @@
+/*
+ * Helpers called from classes generated by JitCompiler. Those classes live in
+ * their own ClassLoader, so everything they touch has to be public. Each
+ * operator has an inline fast path for the common case and otherwise defers
+ * to Interpreter, which keeps semantics and error messages identical.
+ */
+public final class JitRuntime {
+	private JitRuntime() {
+	}
+
+	public static boolean isTruthy(Object object) {
+		return Interpreter.isTruthy(object);
+	}
+
+	public static void print(Output output, Object value) {
+		output.printValue(value);
+	}
+
+	public static Object getGlobal(Environment globals, Token name) {
+		return globals.get(name);
+	}
+
+	public static Object setGlobal(Environment globals, Token name, Object value) {
+		globals.assign(name, value);
+		return value;
+	}
+
+	public static void defineGlobal(Environment globals, Token name, Object value) {
+		globals.define(name, value);
+	}
+
+	public static Object add(Object left, Object right, Token operator) {
+		if (left instanceof Double && right instanceof Double) {
+			return (double) left + (double) right;
+		}
+		return Interpreter.binary(operator, left, right);
+	}
+
+	public static Object subtract(Object left, Object right, Token operator) {
+		if (left instanceof Double && right instanceof Double) {
+			return (double) left - (double) right;
+		}
+		return Interpreter.binary(operator, left, right);
+	}
+
+	public static Object multiply(Object left, Object right, Token operator) {
+		if (left instanceof Double && right instanceof Double) {
+			return (double) left * (double) right;
+		}
+		return Interpreter.binary(operator, left, right);
+	}
+
+	public static Object divide(Object left, Object right, Token operator) {
+		if (left instanceof Double && right instanceof Double && (double) right != 0) {
+			return (double) left / (double) right;
+		}
+		return Interpreter.binary(operator, left, right);
+	}
+
+	public static Object less(Object left, Object right, Token operator) {
+		if (left instanceof Double && right instanceof Double) {
+			return (double) left < (double) right;
+		}
+		return Interpreter.binary(operator, left, right);
+	}
+
+	public static Object lessEqual(Object left, Object right, Token operator) {
+		if (left instanceof Double && right instanceof Double) {
+			return (double) left <= (double) right;
+		}
+		return Interpreter.binary(operator, left, right);
+	}
+
+	public static Object greater(Object left, Object right, Token operator) {
+		if (left instanceof Double && right instanceof Double) {
+			return (double) left > (double) right;
+		}
+		return Interpreter.binary(operator, left, right);
+	}
+
+	public static Object greaterEqual(Object left, Object right, Token operator) {
+		if (left instanceof Double && right instanceof Double) {
+			return (double) left >= (double) right;
+		}
+		return Interpreter.binary(operator, left, right);
+	}
+
+	public static Object equal(Object left, Object right) {
+		return Interpreter.isEqual(left, right);
+	}
+
+	public static Object notEqual(Object left, Object right) {
+		return !Interpreter.isEqual(left, right);
+	}
+
+	public static Object not(Object right) {
+		return !Interpreter.isTruthy(right);
+	}
+
+	public static Object negate(Object right, Token operator) {
+		if (right instanceof Double) {
+			return -(double) right;
+		}
+		return Interpreter.unary(operator, right);
+	}
+}
@@ -0,0 +1,276 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+ * Second half of --optimize, run on resolved trees after Optimizer. It looks
+ * at every While - including the ones a desugared for produces - and wraps
+ * each maximal subexpression of its condition or body that can't change
+ * while the loop runs in an Expr.Invariant, registered with the outermost
+ * loop it is invariant in. The Interpreter evaluates an Invariant the first
+ * time it is reached after that loop is entered and reuses the value for
+ * the remaining iterations, so the bound in "i < n * k" is computed once.
+ *
+ * An expression is invariant when it assigns nothing and every variable it
+ * reads is declared outside the loop and never assigned inside it. Values
+ * are immutable, so such an expression always yields the same result, and
+ * because the first evaluation still happens where it used to, runtime
+ * errors are unaffected.
+ */
+public class LoopOptimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+
+	private static class Loop {
+		// Number of enclosing frames when the loop was entered; frames at or
+		// above this index are declared inside the loop.
+		final int frameDepth;
+		final Set<Binding> assigned = new HashSet<>();
+		final Set<String> assignedGlobals = new HashSet<>();
+		final List<Expr.Invariant> invariants = new ArrayList<>();
+
+		Loop(int frameDepth) {
+			this.frameDepth = frameDepth;
+		}
+	}
+
+	// A local variable: the Block that declares it, and its slot.
+	private record Binding(Stmt.Block frame, int slot) {
+	}
+
+	// Blocks that declare locals, innermost last, mirroring the Resolver.
+	private final List<Stmt.Block> frames = new ArrayList<>();
+	private final List<Loop> loops = new ArrayList<>();
+
+	List<Stmt> optimize(List<Stmt> statements) {
+		List<Stmt> result = new ArrayList<>();
+		for (Stmt statement : statements) {
+			result.add(statement.accept(this));
+		}
+		return result;
+	}
+
+	private Binding binding(int depth, int slot) {
+		return new Binding(frames.get(frames.size() - 1 - depth), slot);
+	}
+
+	private void collectAssignments(Stmt stmt, Loop loop) {
+		if (stmt instanceof Stmt.Block block) {
+			if (block.slots > 0) {
+				frames.add(block);
+			}
+			for (Stmt statement : block.statements) {
+				collectAssignments(statement, loop);
+			}
+			if (block.slots > 0) {
+				frames.remove(frames.size() - 1);
+			}
+		} else if (stmt instanceof Stmt.Expression expression) {
+			collectAssignments(expression.expression, loop);
+		} else if (stmt instanceof Stmt.If ifStmt) {
+			collectAssignments(ifStmt.condition, loop);
+			collectAssignments(ifStmt.thenBranch, loop);
+			if (ifStmt.elseBranch != null) {
+				collectAssignments(ifStmt.elseBranch, loop);
+			}
+		} else if (stmt instanceof Stmt.Print print) {
+			collectAssignments(print.expression, loop);
+		} else if (stmt instanceof Stmt.Var var) {
+			if (var.initializer != null) {
+				collectAssignments(var.initializer, loop);
+			}
+		} else if (stmt instanceof Stmt.While whileStmt) {
+			collectAssignments(whileStmt.condition, loop);
+			collectAssignments(whileStmt.body, loop);
+		}
+	}
+
+	private void collectAssignments(Expr expr, Loop loop) {
+		if (expr instanceof Expr.Assign assign) {
+			collectAssignments(assign.value, loop);
+			if (assign.depth >= 0) {
+				loop.assigned.add(binding(assign.depth, assign.slot));
+			} else {
+				loop.assignedGlobals.add(assign.name.lexeme);
+			}
+		} else if (expr instanceof Expr.Binary binary) {
+			collectAssignments(binary.left, loop);
+			collectAssignments(binary.right, loop);
+		} else if (expr instanceof Expr.Logical logical) {
+			collectAssignments(logical.left, loop);
+			collectAssignments(logical.right, loop);
+		} else if (expr instanceof Expr.Grouping grouping) {
+			collectAssignments(grouping.expression, loop);
+		} else if (expr instanceof Expr.Unary unary) {
+			collectAssignments(unary.right, loop);
+		} else if (expr instanceof Expr.Invariant invariant) {
+			collectAssignments(invariant.expression, loop);
+		}
+	}
+
+	private boolean isInvariant(Expr expr, Loop loop) {
+		if (expr instanceof Expr.Literal) {
+			return true;
+		}
+		if (expr instanceof Expr.Variable variable) {
+			if (variable.depth < 0) {
+				return !loop.assignedGlobals.contains(variable.name.lexeme);
+			}
+			if (frames.size() - 1 - variable.depth >= loop.frameDepth) {
+				return false;
+			}
+			return !loop.assigned.contains(binding(variable.depth, variable.slot));
+		}
+		if (expr instanceof Expr.Binary binary) {
+			return isInvariant(binary.left, loop) && isInvariant(binary.right, loop);
+		}
+		if (expr instanceof Expr.Logical logical) {
+			return isInvariant(logical.left, loop) && isInvariant(logical.right, loop);
+		}
+		if (expr instanceof Expr.Grouping grouping) {
+			return isInvariant(grouping.expression, loop);
+		}
+		if (expr instanceof Expr.Unary unary) {
+			return isInvariant(unary.right, loop);
+		}
+		return false;
+	}
+
+	// Only operators are worth caching; literals and plain reads already cost
+	// a single step.
+	private Expr hoist(Expr expr) {
+		for (Loop loop : loops) {
+			if (isInvariant(expr, loop)) {
+				Expr.Invariant invariant = new Expr.Invariant(expr);
+				loop.invariants.add(invariant);
+				return invariant;
+			}
+		}
+		return null;
+	}
+
+	private Expr optimize(Expr expr) {
+		return expr.accept(this);
+	}
+
+	@Override
+	public Stmt visitBlockStmt(Stmt.Block stmt) {
+		if (stmt.slots > 0) {
+			frames.add(stmt);
+		}
+		List<Stmt> statements = new ArrayList<>();
+		for (Stmt statement : stmt.statements) {
+			statements.add(statement.accept(this));
+		}
+		if (stmt.slots > 0) {
+			frames.remove(frames.size() - 1);
+		}
+		return new Stmt.Block(statements);
+	}
+
+	@Override
+	public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+		return new Stmt.Expression(optimize(stmt.expression));
+	}
+
+	@Override
+	public Stmt visitIfStmt(Stmt.If stmt) {
+		Stmt elseBranch = stmt.elseBranch != null ? stmt.elseBranch.accept(this) : null;
+		return new Stmt.If(optimize(stmt.condition), stmt.thenBranch.accept(this), elseBranch);
+	}
+
+	@Override
+	public Stmt visitPrintStmt(Stmt.Print stmt) {
+		return new Stmt.Print(optimize(stmt.expression));
+	}
+
+	@Override
+	public Stmt visitVarStmt(Stmt.Var stmt) {
+		return new Stmt.Var(stmt.name, stmt.initializer != null ? optimize(stmt.initializer) : null);
+	}
+
+	@Override
+	public Stmt visitWhileStmt(Stmt.While stmt) {
+		Loop loop = new Loop(frames.size());
+		collectAssignments(stmt.condition, loop);
+		collectAssignments(stmt.body, loop);
+		loops.add(loop);
+		Stmt.While result = new Stmt.While(optimize(stmt.condition), stmt.body.accept(this));
+		loops.remove(loops.size() - 1);
+		if (!loop.invariants.isEmpty()) {
+			result.invariants = loop.invariants;
+		}
+		return result;
+	}
+
+	@Override
+	public Stmt visitNumericWhileStmt(Stmt.NumericWhile stmt) {
+		return stmt.loop.accept(this);
+	}
+
+	@Override
+	public Expr visitAssignExpr(Expr.Assign expr) {
+		return new Expr.Assign(expr.name, optimize(expr.value));
+	}
+
+	@Override
+	public Expr visitBinaryExpr(Expr.Binary expr) {
+		Expr hoisted = hoist(expr);
+		if (hoisted != null) {
+			return hoisted;
+		}
+		return new Expr.Binary(optimize(expr.left), expr.operator, optimize(expr.right));
+	}
+
+	@Override
+	public Expr visitGroupingExpr(Expr.Grouping expr) {
+		return new Expr.Grouping(optimize(expr.expression));
+	}
+
+	@Override
+	public Expr visitLiteralExpr(Expr.Literal expr) {
+		return expr;
+	}
+
+	@Override
+	public Expr visitLogicalExpr(Expr.Logical expr) {
+		Expr hoisted = hoist(expr);
+		if (hoisted != null) {
+			return hoisted;
+		}
+		return new Expr.Logical(optimize(expr.left), expr.operator, optimize(expr.right));
+	}
+
+	@Override
+	public Expr visitVariableExpr(Expr.Variable expr) {
+		return expr;
+	}
+
+	@Override
+	public Expr visitUnaryExpr(Expr.Unary expr) {
+		Expr hoisted = hoist(expr);
+		if (hoisted != null) {
+			return hoisted;
+		}
+		return new Expr.Unary(expr.operator, optimize(expr.right));
+	}
+
+	@Override
+	public Expr visitInvariantExpr(Expr.Invariant expr) {
+		return expr;
+	}
+
+	@Override
+	public Expr visitIncrementExpr(Expr.Increment expr) {
+		return optimize(expr.assign);
+	}
+
+	@Override
+	public Expr visitCompareVariablesExpr(Expr.CompareVariables expr) {
+		return optimize(expr.binary);
+	}
+
+	@Override
+	public Expr visitCompareConstantExpr(Expr.CompareConstant expr) {
+		return optimize(expr.binary);
+	}
+}
@@ -2,40 +2,125 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
-import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 
 public class Lox {
-	private static final Interpreter interpreter = new Interpreter();
-	public static boolean hadError = false;
-	public static boolean hadRuntimeError = false;
-
 	public static void main(String[] args) throws IOException {
-		if (args.length > 1) {
-			System.out.println("Usage: jlox [script]");
-			System.exit(64);
-		} else if (args.length == 1) {
-			runFile(args[0]);
-		} else {
-			runPrompt();
+		String script = null;
+		String engine = "tree";
+		boolean optimize = false;
+		boolean specialize = false;
+		boolean fuse = true;
+		AstCache cache = new AstCache(AstCache.defaultDirectory());
+		Path outputFile = null;
+		Path profileFile = null;
+		boolean batch = false;
+		Path socket = null;
+		int jobs = Runtime.getRuntime().availableProcessors();
+		for (String arg : args) {
+			if (arg.equals("--engine=tree") || arg.equals("--engine=vm") || arg.equals("--engine=jit")) {
+				engine = arg.substring("--engine=".length());
+			} else if (arg.equals("--optimize")) {
+				optimize = true;
+			} else if (arg.equals("--no-cache")) {
+				cache = null;
+			} else if (arg.equals("--no-fuse")) {
+				fuse = false;
+			} else if (arg.equals("--specialize")) {
+				specialize = true;
+			} else if (arg.equals("--profile")) {
+				profileFile = Paths.get("jlox-profile.folded");
+			} else if (arg.startsWith("--profile=") && arg.length() > "--profile=".length()) {
+				profileFile = Paths.get(arg.substring("--profile=".length()));
+			} else if (arg.equals("--batch")) {
+				batch = true;
+			} else if (arg.startsWith("--serve=") && arg.length() > "--serve=".length()) {
+				socket = Paths.get(arg.substring("--serve=".length()));
+			} else if (arg.matches("--jobs=[1-9][0-9]{0,3}")) {
+				jobs = Integer.parseInt(arg.substring("--jobs=".length()));
+			} else if (arg.startsWith("--output=") && arg.length() > "--output=".length()) {
+				outputFile = Paths.get(arg.substring("--output=".length()));
+			} else if (arg.startsWith("--") || script != null) {
+				usage();
+			} else {
+				script = arg;
+			}
+		}
+		// Profiling instruments the plain tree walker, so it can't be combined
+		// with another engine or with --specialize
+		if (profileFile != null && (specialize || !engine.equals("tree"))) {
+			usage();
+		}
+		// The server is long-lived, so it always registers the MBean
+		if (socket != null) {
+			if (script != null || batch || outputFile != null || profileFile != null) {
+				usage();
+			}
+			new LoxServer(new LoxEngine(engine, optimize, specialize, fuse, null), socket).serve();
+			return;
+		}
+		// A batch captures each script's output and runs them concurrently,
+		// which rules out --output and the (single-threaded) profiler
+		if (batch) {
+			if (script == null || outputFile != null || profileFile != null) {
+				usage();
+			}
+			runBatch(Paths.get(script), new LoxEngine(engine, optimize, specialize, fuse, cache), jobs);
+			return;
+		}
+		Output output = outputFile != null ? Output.file(outputFile, Charset.defaultCharset()) : Output.stdout();
+		Profiler profiler = profileFile != null ? new Profiler() : null;
+		LoxSession session = new LoxEngine(engine, optimize, specialize, fuse, cache).open(output, new ErrorReporter(),
+				profiler);
+		LoxMetrics.registerIfRequested();
+		LoxEngine.Result result = LoxEngine.Result.SUCCESS;
+		try {
+			if (script != null) {
+				result = session.runFile(Paths.get(script), Charset.defaultCharset());
+			} else {
+				runPrompt(session);
+			}
+		} finally {
+			// Standard output itself is left open.
+			if (outputFile != null) {
+				output.close();
+			} else {
+				output.flush();
+			}
+			if (profiler != null) {
+				profiler.report(System.err);
+				profiler.writeFoldedStacks(profileFile);
+			}
+		}
+		if (result != LoxEngine.Result.SUCCESS) {
+			System.exit(result.exitCode);
 		}
 	}
 
-	private static void runFile(String filePath) throws IOException {
-		// Reads all bytes from the file at filePath and puts it into a byte array
-		byte[] bytes = Files.readAllBytes(Paths.get(filePath));
-		// Converts byte array into a string using the default charset, then calls run
-		run(new String(bytes, Charset.defaultCharset()));
-		if (hadError) {
-			System.exit(65);
+	private static void usage() {
+		System.out.println("Usage: jlox [--engine=tree|vm|jit] [--specialize] [--optimize] [--no-fuse] [--output=file] [--no-cache]"
+				+ " [--profile[=folded-stacks-file]] [script]");
+		System.out.println("       jlox --batch [--jobs=n] [--engine=tree|vm|jit] [--specialize] [--optimize] [--no-fuse] [--no-cache]"
+				+ " directory|manifest");
+		System.out.println("       jlox --serve=socket [--engine=tree|vm|jit] [--specialize] [--optimize] [--no-fuse]");
+		System.exit(64);
+	}
+
+	private static void runBatch(Path target, LoxEngine engine, int jobs) throws IOException {
+		LoxMetrics.registerIfRequested();
+		List<BatchRunner.Outcome> outcomes;
+		try (BatchRunner runner = new BatchRunner(engine, Charset.defaultCharset(), jobs)) {
+			outcomes = runner.run(BatchRunner.scripts(target));
 		}
-		if (hadRuntimeError) {
-			System.exit(70);
+		int exitCode = BatchRunner.report(outcomes, System.out, System.err);
+		if (exitCode != 0) {
+			System.exit(exitCode);
 		}
 	}
 
-	private static void runPrompt() throws IOException {
+	private static void runPrompt(LoxSession session) throws IOException {
 		InputStreamReader input = new InputStreamReader(System.in);
 		BufferedReader reader = new BufferedReader(input);
 		for (;;) {
@@ -44,41 +129,7 @@ public class Lox {
 			if (line == null) {
 				break;
 			}
-			run(line);
-			hadError = false;
-		}
-	}
-
-	private static void run(String source) {
-		Scanner scanner = new Scanner(source);
-		List<Token> tokens = scanner.scanTokens();
-		Parser parser = new Parser(tokens);
-		List<Stmt> statements = parser.parse();
-		if (hadError) {
-			return;
-		}
-		interpreter.interpret(statements);
-	}
-
-	private static void report(int line, String where, String msg) {
-		System.err.println("[line " + line + "] Error" + where + ": " + msg);
-		hadError = true;
-	}
-
-	public static void error(int line, String msg) {
-		report(line, "", msg);
-	}
-
-	public static void runtimeError(RuntimeError error) {
-		System.err.println(error.getMessage() + "\n[line " + error.token.line + "]");
-		hadRuntimeError = true;
-	}
-
-	public static void error(Token token, String message) {
-		if (token.type == TokenType.EOF) {
-			report(token.line, " at end", message);
-		} else {
-			report(token.line, " at '" + token.lexeme + "'", message);
+			session.run("<stdin>", line);
 		}
 	}
 }
@@ -0,0 +1,66 @@
+import java.io.Writer;
+
+/*
+ * Entry point for running Lox inside another program. A LoxEngine holds only
+ * configuration (which backend runs programs, whether they're optimized,
+ * where parsed programs are cached), so a single one can be shared by any
+ * number of threads. Programs run in LoxSessions opened from it, each with
+ * its own globals, output and errors.
+ *
+ * The command line (Lox) is a client like any other.
+ */
+public class LoxEngine {
+	// How a run ended, with the exit code the command line uses for it.
+	public enum Result {
+		SUCCESS(0), SYNTAX_ERROR(65), RUNTIME_ERROR(70);
+
+		public final int exitCode;
+
+		Result(int exitCode) {
+			this.exitCode = exitCode;
+		}
+	}
+
+	// "tree", "vm" or "jit".
+	final String backend;
+	final boolean optimize;
+	final boolean specialize;
+	// Whether tree-walked programs get Superinstructions.
+	final boolean fuse;
+	// Null when parsed programs aren't cached.
+	final AstCache cache;
+
+	public LoxEngine() {
+		this("tree", false, false, null);
+	}
+
+	public LoxEngine(String backend, boolean optimize, boolean specialize, AstCache cache) {
+		this(backend, optimize, specialize, true, cache);
+	}
+
+	public LoxEngine(String backend, boolean optimize, boolean specialize, boolean fuse, AstCache cache) {
+		if (!backend.equals("tree") && !backend.equals("vm") && !backend.equals("jit")) {
+			throw new IllegalArgumentException("Unknown engine '" + backend + "'.");
+		}
+		this.backend = backend;
+		this.optimize = optimize;
+		this.specialize = specialize;
+		this.fuse = fuse;
+		this.cache = cache;
+	}
+
+	// A session printing to output and reporting errors to errors. Sessions
+	// are not thread-safe; open one per thread.
+	public LoxSession open(Output output, Writer errors) {
+		return new LoxSession(this, output, new ErrorReporter(errors), null);
+	}
+
+	LoxSession open(Output output, ErrorReporter reporter, Profiler profiler) {
+		return new LoxSession(this, output, reporter, profiler);
+	}
+
+	// Runs one program in a session of its own and flushes its output.
+	public Result run(String source, Output output, Writer errors) {
+		return open(output, errors).run(source);
+	}
+}
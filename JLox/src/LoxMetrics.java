@@ -0,0 +1,110 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/*
+ * Process-wide counters, exposed over JMX as jlox:type=Metrics. Hot paths
+ * never touch them: the Scanner and Interpreter count in plain fields and
+ * the totals are added here once per phase, so they can stay on all the
+ * time.
+ *
+ * Creating the platform MBean server takes a noticeable part of a short
+ * script's run, so the MBean is only registered when asked for with
+ * -Djlox.jmx=true, or when the JVM's JMX agent is being set up anyway.
+ */
+public class LoxMetrics implements LoxMetricsMBean {
+	static final LoxMetrics INSTANCE = new LoxMetrics();
+
+	private final LongAdder tokensScanned = new LongAdder();
+	private final LongAdder astNodesCreated = new LongAdder();
+	private final LongAdder framesAllocated = new LongAdder();
+	private final LongAdder statementsExecuted = new LongAdder();
+	private final LongAdder runtimeErrors = new LongAdder();
+	private final LongAdder bytesPrinted = new LongAdder();
+
+	private LoxMetrics() {
+	}
+
+	static void registerIfRequested() {
+		if (Boolean.getBoolean("jlox.jmx") || System.getProperty("com.sun.management.jmxremote") != null) {
+			register();
+		}
+	}
+
+	static synchronized void register() {
+		try {
+			ObjectName name = new ObjectName("jlox:type=Metrics");
+			if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, name);
+			}
+		} catch (JMException e) {
+			System.err.println("Could not register JMX metrics: " + e.getMessage());
+		}
+	}
+
+	// Forgets everything counted so far, e.g. by a server's warm-up runs.
+	void reset() {
+		tokensScanned.reset();
+		astNodesCreated.reset();
+		framesAllocated.reset();
+		statementsExecuted.reset();
+		runtimeErrors.reset();
+		bytesPrinted.reset();
+	}
+
+	void tokensScanned(long count) {
+		tokensScanned.add(count);
+	}
+
+	void astNodesCreated(long count) {
+		astNodesCreated.add(count);
+	}
+
+	void framesAllocated(long count) {
+		framesAllocated.add(count);
+	}
+
+	void statementsExecuted(long count) {
+		statementsExecuted.add(count);
+	}
+
+	void runtimeError() {
+		runtimeErrors.increment();
+	}
+
+	void bytesPrinted(long count) {
+		bytesPrinted.add(count);
+	}
+
+	@Override
+	public long getTokensScanned() {
+		return tokensScanned.sum();
+	}
+
+	@Override
+	public long getAstNodesCreated() {
+		return astNodesCreated.sum();
+	}
+
+	@Override
+	public long getFramesAllocated() {
+		return framesAllocated.sum();
+	}
+
+	@Override
+	public long getStatementsExecuted() {
+		return statementsExecuted.sum();
+	}
+
+	@Override
+	public long getRuntimeErrors() {
+		return runtimeErrors.sum();
+	}
+
+	@Override
+	public long getBytesPrinted() {
+		return bytesPrinted.sum();
+	}
+}
@@ -0,0 +1,17 @@
+// Management interface of LoxMetrics, as JMX names it.
+public interface LoxMetricsMBean {
+	long getTokensScanned();
+
+	long getAstNodesCreated();
+
+	// Local-variable frames the tree walker allocated: one per session that
+	// declares a local, plus one per regrowth.
+	long getFramesAllocated();
+
+	// Only counted by the tree walker; the vm and jit engines add nothing.
+	long getStatementsExecuted();
+
+	long getRuntimeErrors();
+
+	long getBytesPrinted();
+}
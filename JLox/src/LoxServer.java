@@ -0,0 +1,181 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * `jlox --serve=socket`: a resident, warmed-up JVM that runs scripts sent
+ * over a Unix domain socket. Each connection is one script, served on a
+ * virtual thread of its own in a fresh LoxSession, so requests run
+ * concurrently and share no interpreter state.
+ *
+ * The protocol is plain enough for `nc -U -N` or socat, and bin/jlox-client
+ * is a shell script over exactly that:
+ *   request:  the script's source (UTF-8), ended by closing the write side
+ *   response: one line per line of output, "O " + the line for stdout and
+ *             "E " + the line for stderr, then a last line "X " + the exit
+ *             code, after which the server closes the connection
+ *
+ * Only the user running the server can connect: anyone who can would be
+ * running code in its JVM.
+ */
+public class LoxServer {
+	static final char STDOUT = 'O';
+	static final char STDERR = 'E';
+	static final char EXIT = 'X';
+
+	// A few hundred runs of this before accepting connections get the
+	// scanner, parser and engine through the JIT's tiers.
+	private static final String WARM_UP = "var total = 0; var text = \"\";"
+			+ " for (var i = 0; i < 200; i = i + 1) { var x = i * 2 - 1; if (x > 10 and !(x == 50)) total = total + x / 2;"
+			+ " else { text = text + \"a\"; } } print total; print text;";
+	private static final int WARM_UP_RUNS = 300;
+
+	private final LoxEngine engine;
+	private final Path socket;
+
+	public LoxServer(LoxEngine engine, Path socket) {
+		this.engine = engine;
+		this.socket = socket;
+	}
+
+	// Serves until the process is stopped. A socket file left behind by an
+	// earlier server is replaced. The metrics start counting once the
+	// warm-up is over, so they only ever cover requests.
+	public void serve() throws IOException {
+		warmUp();
+		LoxMetrics.INSTANCE.reset();
+		LoxMetrics.register();
+		Files.deleteIfExists(socket);
+		try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+				ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor()) {
+			bind(server);
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				try {
+					Files.deleteIfExists(socket);
+				} catch (IOException ignored) {
+				}
+			}));
+			System.err.println("jlox: serving on " + socket);
+			for (;;) {
+				SocketChannel client = server.accept();
+				requests.execute(() -> handle(client));
+			}
+		}
+	}
+
+	// bind() creates the socket file with the process umask, so it's bound
+	// inside a directory only the owner can enter, made owner-only, and only
+	// then moved to where clients look for it.
+	private void bind(ServerSocketChannel server) throws IOException {
+		Path parent = socket.toAbsolutePath().getParent();
+		Path directory = Files.createTempDirectory(parent, ".jlox-",
+				PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+		try {
+			Path bound = directory.resolve("s");
+			server.bind(UnixDomainSocketAddress.of(bound));
+			Files.setPosixFilePermissions(bound, PosixFilePermissions.fromString("rw-------"));
+			Files.move(bound, socket, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(directory.resolve("s"));
+			Files.delete(directory);
+		}
+	}
+
+	private void warmUp() {
+		for (int i = 0; i < WARM_UP_RUNS; i++) {
+			engine.run(WARM_UP, new Output(Writer.nullWriter()), Writer.nullWriter());
+		}
+	}
+
+	// A script that takes the interpreter itself down (deep enough nesting
+	// overflows the parser's stack) still gets its error and exit code sent.
+	private void handle(SocketChannel client) {
+		try (client) {
+			InputStream request = Channels.newInputStream(client);
+			String source = new String(request.readAllBytes(), StandardCharsets.UTF_8);
+			OutputStream response = Channels.newOutputStream(client);
+			LineWriter errors = new LineWriter(response, STDERR);
+			LineWriter printed = new LineWriter(response, STDOUT);
+			Output output = new Output(printed);
+			int exitCode;
+			try {
+				exitCode = engine.open(output, errors).run("<client>", source).exitCode;
+			} catch (UncheckedIOException e) {
+				throw e;
+			} catch (StackOverflowError | RuntimeException e) {
+				output.flush();
+				errors.write(e instanceof StackOverflowError ? "Stack overflow.\n" : "Internal error: " + e + "\n");
+				exitCode = LoxEngine.Result.RUNTIME_ERROR.exitCode;
+			}
+			output.flush();
+			printed.close();
+			errors.close();
+			response.write((EXIT + " " + exitCode + "\n").getBytes(StandardCharsets.UTF_8));
+		} catch (IOException | UncheckedIOException e) {
+			// The client went away; nothing is waiting for the rest.
+		}
+	}
+
+	// Sends what's written to it a line at a time, each prefixed with its
+	// stream's tag. flush() sends every complete line so far; close() also
+	// sends an unfinished last line, as a line of its own.
+	private static class LineWriter extends Writer {
+		private final OutputStream out;
+		private final char tag;
+		private final StringBuilder pending = new StringBuilder();
+
+		LineWriter(OutputStream out, char tag) {
+			this.out = out;
+			this.tag = tag;
+		}
+
+		@Override
+		public void write(char[] chars, int offset, int length) {
+			pending.append(chars, offset, length);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			int end = pending.lastIndexOf("\n") + 1;
+			if (end == 0) {
+				return;
+			}
+			send(end);
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (pending.length() > 0 && pending.charAt(pending.length() - 1) != '\n') {
+				pending.append('\n');
+			}
+			send(pending.length());
+		}
+
+		private void send(int end) throws IOException {
+			StringBuilder frames = new StringBuilder(end + 16);
+			int start = 0;
+			while (start < end) {
+				int newline = pending.indexOf("\n", start);
+				frames.append(tag).append(' ').append(pending, start, newline + 1);
+				start = newline + 1;
+			}
+			pending.delete(0, end);
+			out.write(frames.toString().getBytes(StandardCharsets.UTF_8));
+			out.flush();
+		}
+	}
+}
@@ -0,0 +1,228 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.List;
+
+import jdk.jfr.FlightRecorder;
+
+/*
+ * One line of execution: an interpreter (or VM) whose globals persist from
+ * one run to the next, like a REPL session, plus the output and errors it
+ * reports to. A session belongs to one thread at a time; sessions opened
+ * from the same LoxEngine share nothing mutable but the AST cache directory
+ * and LoxMetrics, both safe to use concurrently. Each has its own Symbols,
+ * so the names it interns go away with it.
+ *
+ * Every run scans, parses, resolves, optionally optimizes and executes, and
+ * reports what it did as JFR events and to LoxMetrics.
+ */
+public class LoxSession {
+	private final LoxEngine engine;
+	private final ErrorReporter reporter;
+	private final Interpreter interpreter;
+	// Only for the "vm" backend.
+	private final VM vm;
+	// Ids for the names of every run, since the globals persist across runs.
+	private final Symbols symbols = new Symbols();
+
+	LoxSession(LoxEngine engine, Output output, ErrorReporter reporter, Profiler profiler) {
+		this.engine = engine;
+		this.reporter = reporter;
+		if (profiler != null) {
+			interpreter = new ProfilingInterpreter(output, reporter, profiler);
+		} else if (engine.specialize) {
+			interpreter = new SpecializingInterpreter(output, reporter);
+		} else {
+			interpreter = new Interpreter(output, reporter);
+		}
+		vm = engine.backend.equals("vm") ? new VM(output, reporter) : null;
+	}
+
+	public LoxEngine.Result run(String source) {
+		return run("<string>", source);
+	}
+
+	// The name only labels the run in JFR events.
+	public LoxEngine.Result run(String name, String source) {
+		reporter.reset();
+		List<Stmt> statements = parse(new Scanner(source, reporter, symbols), name);
+		if (!reporter.hadError) {
+			execute(statements, name);
+		}
+		return result();
+	}
+
+	// Streams the file through a memory mapping, so the source is never held
+	// on the heap as a whole. A script that parsed cleanly before is read
+	// back from the engine's cache instead.
+	public LoxEngine.Result runFile(Path path, Charset charset) throws IOException {
+		reporter.reset();
+		String name = path.toString();
+		AstCache cache = engine.cache;
+		String key = cache != null ? cache.key(path, charset) : null;
+		if (key != null) {
+			ParseEvent event = FlightRecorder.isInitialized() ? new ParseEvent() : null;
+			long start = System.nanoTime();
+			if (event != null) {
+				event.begin();
+			}
+			AstSerializer.Tree tree = cache.load(key, symbols);
+			if (tree != null) {
+				LoxMetrics.INSTANCE.astNodesCreated(tree.nodes());
+				if (event != null) {
+					event.end();
+				}
+				if (event != null && event.shouldCommit()) {
+					event.script = name;
+					event.nodes = tree.nodes();
+					event.parseTime = System.nanoTime() - start;
+					event.cached = true;
+					event.commit();
+				}
+				execute(tree.statements(), name);
+				return result();
+			}
+		}
+		List<Stmt> statements;
+		try (MappedFileReader reader = new MappedFileReader(path, charset)) {
+			statements = parse(new Scanner(reader, reporter, symbols), name);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		if (reporter.hadError) {
+			return result();
+		}
+		if (key != null) {
+			cache.store(key, statements);
+		}
+		execute(statements, name);
+		return result();
+	}
+
+	private LoxEngine.Result result() {
+		if (reporter.hadError) {
+			return LoxEngine.Result.SYNTAX_ERROR;
+		}
+		if (reporter.hadRuntimeError) {
+			return LoxEngine.Result.RUNTIME_ERROR;
+		}
+		return LoxEngine.Result.SUCCESS;
+	}
+
+	// Adds up the time the Parser spends waiting on the Scanner; only used
+	// while a recording wants ScanEvents.
+	private static class TimedTokenSource implements TokenSource {
+		private final TokenSource source;
+		long nanos = 0;
+
+		TimedTokenSource(TokenSource source) {
+			this.source = source;
+		}
+
+		@Override
+		public Token nextToken() {
+			long start = System.nanoTime();
+			Token token = source.nextToken();
+			nanos += System.nanoTime() - start;
+			return token;
+		}
+	}
+
+	// JFR events are only created while Flight Recorder is running: the first
+	// event class to load would otherwise start up its machinery, which costs
+	// more than a short script takes to run.
+	private List<Stmt> parse(Scanner scanner, String name) {
+		if (!FlightRecorder.isInitialized()) {
+			Parser parser = new Parser(scanner, reporter);
+			List<Stmt> statements = parser.parse();
+			LoxMetrics.INSTANCE.tokensScanned(scanner.tokenCount);
+			LoxMetrics.INSTANCE.astNodesCreated(parser.nodeCount);
+			return statements;
+		}
+		ScanEvent scanEvent = new ScanEvent();
+		ParseEvent parseEvent = new ParseEvent();
+		TimedTokenSource timed = scanEvent.isEnabled() || parseEvent.isEnabled() ? new TimedTokenSource(scanner) : null;
+		long start = System.nanoTime();
+		scanEvent.begin();
+		parseEvent.begin();
+		Parser parser = new Parser(timed != null ? timed : scanner, reporter);
+		List<Stmt> statements = parser.parse();
+		LoxMetrics.INSTANCE.tokensScanned(scanner.tokenCount);
+		LoxMetrics.INSTANCE.astNodesCreated(parser.nodeCount);
+		scanEvent.end();
+		parseEvent.end();
+		if (scanEvent.shouldCommit()) {
+			scanEvent.script = name;
+			scanEvent.tokens = scanner.tokenCount;
+			scanEvent.scanTime = timed.nanos;
+			scanEvent.commit();
+		}
+		if (parseEvent.shouldCommit()) {
+			parseEvent.script = name;
+			parseEvent.nodes = parser.nodeCount;
+			parseEvent.parseTime = System.nanoTime() - start - timed.nanos;
+			parseEvent.failed = reporter.hadError;
+			parseEvent.commit();
+		}
+		return statements;
+	}
+
+	private void execute(List<Stmt> statements, String name) {
+		InterpretEvent event = FlightRecorder.isInitialized() ? new InterpretEvent() : null;
+		if (event != null) {
+			event.begin();
+		}
+		long executed = interpreter.statementsExecuted;
+		long frames = interpreter.framesAllocated;
+		boolean counted = execute(statements);
+		executed = counted ? interpreter.statementsExecuted - executed : -1;
+		if (counted) {
+			LoxMetrics.INSTANCE.statementsExecuted(executed);
+		}
+		LoxMetrics.INSTANCE.framesAllocated(interpreter.framesAllocated - frames);
+		if (event != null) {
+			event.end();
+		}
+		if (event != null && event.shouldCommit()) {
+			event.script = name;
+			event.engine = engine.backend;
+			event.statements = executed;
+			event.failed = reporter.hadRuntimeError;
+			event.commit();
+		}
+	}
+
+	// Returns whether the tree walker ran the program; only it counts
+	// statements.
+	private boolean execute(List<Stmt> statements) {
+		Resolver resolver = new Resolver();
+		resolver.resolve(statements);
+		if (engine.optimize) {
+			statements = new Optimizer().optimize(statements);
+			new Resolver().resolve(statements);
+			statements = new LoopOptimizer().optimize(statements);
+			new Resolver().resolve(statements);
+		}
+		if (vm != null) {
+			vm.interpret(new Compiler().compile(statements));
+			return false;
+		}
+		if (engine.backend.equals("jit")) {
+			// Falls back to the tree walker for anything the JIT can't compile,
+			// saying so, since the program then runs at tree-walker speed.
+			try {
+				interpreter.interpret(new JitCompiler().compile(statements));
+				return false;
+			} catch (JitCompiler.CannotCompile e) {
+				reporter.warning("jit unavailable (" + e.getMessage() + "), using the tree walker.");
+			}
+		}
+		if (engine.fuse) {
+			statements = new Superinstructions().fuse(statements);
+			new Resolver().resolve(statements);
+		}
+		interpreter.interpret(statements);
+		return true;
+	}
+}
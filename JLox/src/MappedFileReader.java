@@ -0,0 +1,78 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Reader over a memory-mapped script. The file is mapped one region at a
+ * time and decoded straight into the caller's buffer, so neither the bytes
+ * nor a String copy of the file ever live on the heap.
+ */
+public class MappedFileReader extends Reader {
+	private static final long REGION = 64L * 1024 * 1024;
+
+	private final FileChannel channel;
+	private final long size;
+	// Decoding matches new String(bytes, charset): bad input is replaced.
+	private final CharsetDecoder decoder;
+	private ByteBuffer region = null;
+	private long regionStart = 0;
+	private boolean flushed = false;
+
+	public MappedFileReader(Path path, Charset charset) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		this.size = channel.size();
+		this.decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+		if (region == null) {
+			map(0);
+		}
+		while (out.position() == off) {
+			boolean last = regionStart + region.limit() == size;
+			decoder.decode(region, out, last);
+			if (out.position() > off) {
+				break;
+			}
+			if (last) {
+				if (flushed) {
+					return -1;
+				}
+				decoder.flush(out);
+				flushed = true;
+				if (out.position() == off) {
+					return -1;
+				}
+				break;
+			}
+			// The region is used up, or only a partial character is left in
+			// it; map again from the first byte not yet decoded.
+			map(regionStart + region.position());
+		}
+		return out.position() - off;
+	}
+
+	private void map(long from) throws IOException {
+		region = channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(REGION, size - from));
+		regionStart = from;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * How Lox prints numbers: Double.toString's shortest round-trip digits, with
+ * the ".0" of an integral value dropped ("3", not "3.0"). That only ever
+ * happens below 1e7, where Double.toString switches to E notation, so
+ * integral values under it are formatted here directly, and every other
+ * number is exactly Double.toString's text. Neither path needs the
+ * substring the old formatting allocated.
+ */
+final class NumberText {
+	// Double.toString's longest output, e.g. "-2.2250738585072014E-308".
+	static final int MAX_LENGTH = 24;
+	private static final double PLAIN_LIMIT = 1e7;
+	// Small counts and indexes get printed over and over.
+	private static final String[] SMALL = new String[1024];
+
+	static {
+		for (int i = 0; i < SMALL.length; i++) {
+			SMALL[i] = Integer.toString(i);
+		}
+	}
+
+	private NumberText() {
+	}
+
+	static String toString(double value) {
+		if (isPlainIntegral(value)) {
+			int integer = (int) value;
+			if (integer >= 0 && integer < SMALL.length && !isNegativeZero(value)) {
+				return SMALL[integer];
+			}
+			char[] chars = new char[9];
+			return new String(chars, 0, getChars(value, chars, 0));
+		}
+		return Double.toString(value);
+	}
+
+	// Writes the text at chars[offset], which must have room for
+	// MAX_LENGTH chars; returns the offset just past it.
+	static int getChars(double value, char[] chars, int offset) {
+		if (!isPlainIntegral(value)) {
+			String text = Double.toString(value);
+			text.getChars(0, text.length(), chars, offset);
+			return offset + text.length();
+		}
+		int integer = (int) value;
+		if (integer < 0 || isNegativeZero(value)) {
+			chars[offset++] = '-';
+		}
+		int magnitude = Math.abs(integer);
+		int end = offset + digits(magnitude);
+		int position = end;
+		do {
+			chars[--position] = (char) ('0' + magnitude % 10);
+			magnitude /= 10;
+		} while (magnitude != 0);
+		return end;
+	}
+
+	private static boolean isPlainIntegral(double value) {
+		return value == (int) value && Math.abs(value) < PLAIN_LIMIT;
+	}
+
+	// Equal to 0 but printed as "-0".
+	private static boolean isNegativeZero(double value) {
+		return value == 0 && Double.doubleToRawLongBits(value) != 0;
+	}
+
+	private static int digits(int magnitude) {
+		int digits = 1;
+		for (int limit = 10; limit <= magnitude; limit *= 10) {
+			digits++;
+		}
+		return digits;
+	}
+}
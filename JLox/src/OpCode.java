@@ -0,0 +1,37 @@
+/*
+ * Instruction set for the bytecode VM. Each opcode occupies one slot in a
+ * Chunk's code array and is followed by the operands listed next to it.
+ */
+final class OpCode {
+	private OpCode() {
+	}
+
+	static final int CONSTANT = 0; // constant index
+	static final int NIL = 1;
+	static final int TRUE = 2;
+	static final int FALSE = 3;
+	static final int POP = 4;
+	static final int GET_LOCAL = 5; // frame slot
+	static final int SET_LOCAL = 6; // frame slot
+	static final int DEFINE_LOCAL = 7; // frame slot
+	static final int GET_GLOBAL = 8; // constant index of the name Token
+	static final int SET_GLOBAL = 9; // constant index of the name Token
+	static final int DEFINE_GLOBAL = 10; // constant index of the name Token
+	static final int EQUAL = 11;
+	static final int NOT_EQUAL = 12;
+	static final int GREATER = 13;
+	static final int GREATER_EQUAL = 14;
+	static final int LESS = 15;
+	static final int LESS_EQUAL = 16;
+	static final int ADD = 17;
+	static final int SUBTRACT = 18;
+	static final int MULTIPLY = 19;
+	static final int DIVIDE = 20;
+	static final int NOT = 21;
+	static final int NEGATE = 22;
+	static final int PRINT = 23;
+	static final int JUMP = 24; // forward offset
+	static final int JUMP_IF_FALSE = 25; // forward offset, condition stays on the stack
+	static final int LOOP = 26; // backward offset
+	static final int RETURN = 27;
+}
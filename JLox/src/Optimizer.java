@@ -0,0 +1,216 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Optional pass over resolved trees (enabled with --optimize). It folds
+ * operators whose operands are all literals, replaces reads of variables that
+ * are never reassigned with their literal initializer, and prunes If/While
+ * statements whose condition folds to a constant. The result must be
+ * resolved again before it runs.
+ *
+ * Anything that would fail at runtime is left alone: folding is attempted
+ * with the Interpreter's own operator semantics and abandoned on a
+ * RuntimeError, so the error is still raised when and where it used to be.
+ */
+public class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+
+	// Literal values of never-reassigned locals, one map per enclosing block
+	// (slot -> value), innermost last.
+	private final List<Map<Integer, Object>> scopes = new ArrayList<>();
+	// Same for globals, filled in as their declarations are passed so a read
+	// that runs before the declaration is never rewritten.
+	private final Map<String, Object> globals = new HashMap<>();
+
+	List<Stmt> optimize(List<Stmt> statements) {
+		List<Stmt> result = new ArrayList<>();
+		for (Stmt statement : statements) {
+			Stmt optimized = optimize(statement);
+			if (optimized != null) {
+				result.add(optimized);
+			}
+		}
+		return result;
+	}
+
+	// Returns null when the statement has been pruned away.
+	private Stmt optimize(Stmt stmt) {
+		return stmt.accept(this);
+	}
+
+	private Expr optimize(Expr expr) {
+		return expr.accept(this);
+	}
+
+	// A folded or propagated value, on the line of the expression it replaces.
+	// Literals only ever hold flat Strings, so a folded Rope is flattened.
+	private static Expr literal(Object value, Token token) {
+		Expr.Literal literal = new Expr.Literal(value instanceof Rope ? value.toString() : value);
+		literal.line = token.line;
+		return literal;
+	}
+
+	// For positions where a statement is required.
+	private Stmt optimizeBranch(Stmt stmt) {
+		Stmt optimized = optimize(stmt);
+		return optimized != null ? optimized : new Stmt.Block(new ArrayList<>());
+	}
+
+	@Override
+	public Stmt visitBlockStmt(Stmt.Block stmt) {
+		if (stmt.slots == 0) {
+			return new Stmt.Block(optimize(stmt.statements));
+		}
+		scopes.add(new HashMap<>());
+		List<Stmt> statements = optimize(stmt.statements);
+		scopes.remove(scopes.size() - 1);
+		return new Stmt.Block(statements);
+	}
+
+	@Override
+	public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+		return new Stmt.Expression(optimize(stmt.expression));
+	}
+
+	@Override
+	public Stmt visitIfStmt(Stmt.If stmt) {
+		Expr condition = optimize(stmt.condition);
+		if (condition instanceof Expr.Literal) {
+			if (Interpreter.isTruthy(((Expr.Literal) condition).value)) {
+				return optimize(stmt.thenBranch);
+			}
+			return stmt.elseBranch != null ? optimize(stmt.elseBranch) : null;
+		}
+		Stmt thenBranch = optimizeBranch(stmt.thenBranch);
+		Stmt elseBranch = stmt.elseBranch != null ? optimize(stmt.elseBranch) : null;
+		return new Stmt.If(condition, thenBranch, elseBranch);
+	}
+
+	@Override
+	public Stmt visitPrintStmt(Stmt.Print stmt) {
+		return new Stmt.Print(optimize(stmt.expression));
+	}
+
+	@Override
+	public Stmt visitVarStmt(Stmt.Var stmt) {
+		Expr initializer = stmt.initializer != null ? optimize(stmt.initializer) : null;
+		if (!stmt.reassigned && (initializer == null || initializer instanceof Expr.Literal)) {
+			Object value = initializer != null ? ((Expr.Literal) initializer).value : null;
+			if (stmt.slot >= 0) {
+				scopes.get(scopes.size() - 1).put(stmt.slot, value);
+			} else {
+				globals.put(stmt.name.lexeme, value);
+			}
+		}
+		return new Stmt.Var(stmt.name, initializer);
+	}
+
+	@Override
+	public Stmt visitWhileStmt(Stmt.While stmt) {
+		Expr condition = optimize(stmt.condition);
+		if (condition instanceof Expr.Literal && !Interpreter.isTruthy(((Expr.Literal) condition).value)) {
+			return null;
+		}
+		return new Stmt.While(condition, optimizeBranch(stmt.body));
+	}
+
+	@Override
+	public Stmt visitNumericWhileStmt(Stmt.NumericWhile stmt) {
+		return stmt.loop.accept(this);
+	}
+
+	@Override
+	public Expr visitAssignExpr(Expr.Assign expr) {
+		return new Expr.Assign(expr.name, optimize(expr.value));
+	}
+
+	@Override
+	public Expr visitBinaryExpr(Expr.Binary expr) {
+		Expr left = optimize(expr.left);
+		Expr right = optimize(expr.right);
+		if (left instanceof Expr.Literal && right instanceof Expr.Literal) {
+			try {
+				return literal(Interpreter.binary(expr.operator, ((Expr.Literal) left).value,
+						((Expr.Literal) right).value), expr.operator);
+			} catch (RuntimeError error) {
+				// Leave it for the runtime to report.
+			}
+		}
+		return new Expr.Binary(left, expr.operator, right);
+	}
+
+	@Override
+	public Expr visitGroupingExpr(Expr.Grouping expr) {
+		Expr expression = optimize(expr.expression);
+		if (expression instanceof Expr.Literal) {
+			return expression;
+		}
+		return new Expr.Grouping(expression);
+	}
+
+	@Override
+	public Expr visitInvariantExpr(Expr.Invariant expr) {
+		return new Expr.Invariant(optimize(expr.expression));
+	}
+
+	@Override
+	public Expr visitIncrementExpr(Expr.Increment expr) {
+		return optimize(expr.assign);
+	}
+
+	@Override
+	public Expr visitCompareVariablesExpr(Expr.CompareVariables expr) {
+		return optimize(expr.binary);
+	}
+
+	@Override
+	public Expr visitCompareConstantExpr(Expr.CompareConstant expr) {
+		return optimize(expr.binary);
+	}
+
+	@Override
+	public Expr visitLiteralExpr(Expr.Literal expr) {
+		return expr;
+	}
+
+	@Override
+	public Expr visitLogicalExpr(Expr.Logical expr) {
+		Expr left = optimize(expr.left);
+		Expr right = optimize(expr.right);
+		if (left instanceof Expr.Literal) {
+			boolean truthy = Interpreter.isTruthy(((Expr.Literal) left).value);
+			if (expr.operator.type == TokenType.OR) {
+				return truthy ? left : right;
+			}
+			return truthy ? right : left;
+		}
+		return new Expr.Logical(left, expr.operator, right);
+	}
+
+	@Override
+	public Expr visitVariableExpr(Expr.Variable expr) {
+		if (expr.depth >= 0) {
+			Map<Integer, Object> scope = scopes.get(scopes.size() - 1 - expr.depth);
+			if (scope.containsKey(expr.slot)) {
+				return literal(scope.get(expr.slot), expr.name);
+			}
+		} else if (globals.containsKey(expr.name.lexeme)) {
+			return literal(globals.get(expr.name.lexeme), expr.name);
+		}
+		return new Expr.Variable(expr.name);
+	}
+
+	@Override
+	public Expr visitUnaryExpr(Expr.Unary expr) {
+		Expr right = optimize(expr.right);
+		if (right instanceof Expr.Literal) {
+			try {
+				return literal(Interpreter.unary(expr.operator, ((Expr.Literal) right).value), expr.operator);
+			} catch (RuntimeError error) {
+				// Leave it for the runtime to report.
+			}
+		}
+		return new Expr.Unary(expr.operator, right);
+	}
+}
@@ -0,0 +1,150 @@
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Where print statements go. Lines are collected in a char buffer and handed
+ * to the underlying Writer in one call once the buffer passes its threshold,
+ * instead of a synchronized, flushing System.out.println per line.
+ *
+ * Whoever runs a program flushes at the points where ordering against other
+ * output matters: when the program ends and before a runtime error is
+ * written to stderr.
+ */
+public class Output {
+	static final int DEFAULT_THRESHOLD = 8192;
+	private static final String LINE_SEPARATOR = System.lineSeparator();
+
+	// Counts the encoded bytes on their way out, for LoxMetrics.
+	private static class CountingStream extends FilterOutputStream {
+		long count = 0;
+
+		CountingStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+
+	private final Writer writer;
+	private final int threshold;
+	private char[] buffer;
+	private int length = 0;
+	// Null for a caller's own Writer, whose output is counted in chars.
+	private final CountingStream counted;
+	private long bytesReported = 0;
+
+	public Output(Writer writer) {
+		this(writer, DEFAULT_THRESHOLD);
+	}
+
+	public Output(Writer writer, int threshold) {
+		this(writer, threshold, null);
+	}
+
+	private Output(Writer writer, int threshold, CountingStream counted) {
+		this.writer = writer;
+		this.threshold = threshold;
+		this.buffer = new char[Math.max(threshold, 16)];
+		this.counted = counted;
+	}
+
+	private static Output encoding(OutputStream out, Charset charset) {
+		CountingStream counted = new CountingStream(out);
+		return new Output(new OutputStreamWriter(counted, charset), DEFAULT_THRESHOLD, counted);
+	}
+
+	// Standard output, encoded the way System.out would encode it.
+	static Output stdout() {
+		return encoding(System.out, System.out.charset());
+	}
+
+	// Writes straight to a file through its channel, replacing any contents.
+	static Output file(Path path, Charset charset) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		return encoding(Channels.newOutputStream(channel), charset);
+	}
+
+	public void println(String line) {
+		append(line);
+		append(LINE_SEPARATOR);
+		if (length >= threshold) {
+			flush();
+		}
+	}
+
+	// A print statement's value, as Interpreter.stringify renders it. Numbers
+	// are written straight into the buffer.
+	void printValue(Object value) {
+		if (value instanceof Double) {
+			reserve(NumberText.MAX_LENGTH);
+			length = NumberText.getChars((double) value, buffer, length);
+			append(LINE_SEPARATOR);
+			if (length >= threshold) {
+				flush();
+			}
+			return;
+		}
+		println(Interpreter.stringify(value));
+	}
+
+	private void append(String text) {
+		reserve(text.length());
+		text.getChars(0, text.length(), buffer, length);
+		length += text.length();
+	}
+
+	private void reserve(int chars) {
+		int needed = length + chars;
+		if (needed > buffer.length) {
+			char[] grown = new char[Math.max(buffer.length * 2, needed)];
+			System.arraycopy(buffer, 0, grown, 0, length);
+			buffer = grown;
+		}
+	}
+
+	public void flush() {
+		try {
+			writer.write(buffer, 0, length);
+			writer.flush();
+			if (counted != null) {
+				LoxMetrics.INSTANCE.bytesPrinted(counted.count - bytesReported);
+				bytesReported = counted.count;
+			} else {
+				LoxMetrics.INSTANCE.bytesPrinted(length);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			length = 0;
+		}
+	}
+
+	public void close() {
+		flush();
+		try {
+			writer.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,33 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/*
+ * Flight Recorder event for turning one program into statements: parsing
+ * (interleaved with scanning, see ScanEvent), or loading the tree from the
+ * AstCache.
+ */
+@Name("jlox.Parse")
+@Label("Parse")
+@Category("JLox")
+@Description("Parsing a Lox program, or loading its cached tree")
+public class ParseEvent extends jdk.jfr.Event {
+	@Label("Script")
+	String script;
+
+	@Label("AST Nodes")
+	long nodes;
+
+	@Label("Parse Time")
+	@Description("Duration minus the time spent scanning")
+	@Timespan
+	long parseTime;
+
+	@Label("From Cache")
+	boolean cached;
+
+	@Label("Syntax Errors")
+	boolean failed;
+}
@@ -1,28 +1,100 @@
 /*
  * CFG for our parser
  * ---------------------------------------------------------
- * expression	-> equality ;
+ * expression	-> assignment ;
+ * assignment	-> IDENTIFIER "=" assignment | logic_or ;
+ * logic_or	-> logic_and ( "or" logic_and )* ;
+ * logic_and	-> equality ( "and" equality )* ;
  * equality	-> comparison (("!=" | "==") comparison)* ;
  * comparison	-> term ((">" | ">=" | "<" | "<=") term)* ;
- * term		-> factor (("-" | "+") factor)* ;
+ * term		-> factor (("-" | "+") term)* ;
  * factor	-> unary (("/" | "*") unary)* ;
  * unary	-> ("!" | "-") unary | primary ;
  * primary	-> NUMBER | STRING | "true" | "false" | "nil" | "(" expression ")" ;
+ *
+ * Statements are parsed by recursive descent. Expressions, from assignment
+ * down to factor, are parsed by precedence climbing over the PRECEDENCE
+ * table instead of one method per level, so an operand costs one loop
+ * rather than eight nested calls. Note that term is right-recursive:
+ * "10 - 3 - 2" is 10 - (3 - 2).
  */
 
 import java.util.List;
 import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.EnumSet;
 
 public class Parser {
 	private static class ParseError extends RuntimeException {
 	}
 
-	private final List<Token> tokens;
-	private int current = 0;
+	// Binding powers, loosest first.
+	private static final int ASSIGNMENT = 1;
+	private static final int OR = 2;
+	private static final int AND = 3;
+	private static final int EQUALITY = 4;
+	private static final int COMPARISON = 5;
+	private static final int TERM = 6;
+	private static final int FACTOR = 7;
+	// Binding power of each infix operator, indexed by TokenType ordinal;
+	// 0 for every token that can't continue an expression.
+	private static final int[] PRECEDENCE = new int[TokenType.values().length];
+
+	private static final EnumSet<TokenType> RIGHT_ASSOCIATIVE = EnumSet.of(TokenType.EQUAL, TokenType.MINUS,
+			TokenType.PLUS);
+	private static final EnumSet<TokenType> LOGICAL = EnumSet.of(TokenType.OR, TokenType.AND);
+	private static final EnumSet<TokenType> PREFIX = EnumSet.of(TokenType.NOT, TokenType.MINUS);
+
+	static {
+		PRECEDENCE[TokenType.EQUAL.ordinal()] = ASSIGNMENT;
+		PRECEDENCE[TokenType.OR.ordinal()] = OR;
+		PRECEDENCE[TokenType.AND.ordinal()] = AND;
+		for (TokenType type : EnumSet.of(TokenType.NOT_EQUAL, TokenType.EQUAL_EQUAL)) {
+			PRECEDENCE[type.ordinal()] = EQUALITY;
+		}
+		for (TokenType type : EnumSet.of(TokenType.GREATER, TokenType.GREATER_EQUAL, TokenType.LESS,
+				TokenType.LESS_EQUAL)) {
+			PRECEDENCE[type.ordinal()] = COMPARISON;
+		}
+		for (TokenType type : EnumSet.of(TokenType.MINUS, TokenType.PLUS)) {
+			PRECEDENCE[type.ordinal()] = TERM;
+		}
+		for (TokenType type : EnumSet.of(TokenType.SLASH, TokenType.STAR)) {
+			PRECEDENCE[type.ordinal()] = FACTOR;
+		}
+	}
+
+	// Tokens are pulled from the source on demand; the parser only ever needs
+	// one token of lookahead and the one it just consumed.
+	private final TokenSource source;
+	private final ErrorReporter reporter;
+	private Token previous = null;
+	private Token next;
+	// Parse errors are held until the source is exhausted, so they're still
+	// reported after every scanner error even though scanning and parsing now
+	// interleave.
+	private final List<Token> errorTokens = new ArrayList<>();
+	private final List<String> errorMessages = new ArrayList<>();
+	// Nodes created so far, counted as they're made so the metrics never
+	// need a walk over the tree.
+	long nodeCount = 0;
 
 	public Parser(List<Token> tokens) {
-		this.tokens = tokens;
+		this(tokens.iterator()::next);
+	}
+
+	public Parser(TokenBuffer tokens) {
+		this(tokens.cursor());
+	}
+
+	public Parser(TokenSource source) {
+		this(source, new ErrorReporter());
+	}
+
+	public Parser(TokenSource source, ErrorReporter reporter) {
+		this.source = source;
+		this.reporter = reporter;
+		this.next = source.nextToken();
 	}
 
 	List<Stmt> parse() {
@@ -30,12 +102,14 @@ public class Parser {
 		while (!isAtEnd()) {
 			statements.add(declaration());
 		}
+		for (int i = 0; i < errorTokens.size(); i++) {
+			reporter.error(errorTokens.get(i), errorMessages.get(i));
+		}
 		return statements;
 	}
 
-	// expression -> equality
 	private Expr expression() {
-		return assignment();
+		return expression(ASSIGNMENT);
 	}
 
 	private Stmt declaration() {
@@ -65,7 +139,7 @@ public class Parser {
 			return whileStatement();
 		}
 		if (match(TokenType.LEFT_BRACE)) {
-			return new Stmt.Block(block());
+			return node(new Stmt.Block(block()));
 		}
 		return expressionStatement();
 	}
@@ -97,20 +171,20 @@ public class Parser {
 		Stmt body = statement();
 
 		if (increment != null) {
-			body = new Stmt.Block(
+			body = node(new Stmt.Block(
 					Arrays.asList(
 							body,
-							new Stmt.Expression(increment)));
+							node(new Stmt.Expression(increment)))));
 		}
 
 		if (condition == null) {
-			condition = new Expr.Literal(true);
+			condition = node(new Expr.Literal(true));
 		}
 
-		body = new Stmt.While(condition, body);
+		body = node(new Stmt.While(condition, body));
 
 		if (initializer != null) {
-			body = new Stmt.Block(Arrays.asList(initializer, body));
+			body = node(new Stmt.Block(Arrays.asList(initializer, body)));
 		}
 
 		return body;
@@ -127,13 +201,13 @@ public class Parser {
 		if (match(TokenType.ELSE)) {
 			elseBranch = statement();
 		}
-		return new Stmt.If(condition, thenBranch, elseBranch);
+		return node(new Stmt.If(condition, thenBranch, elseBranch));
 	}
 
 	private Stmt printStatement() {
 		Expr value = expression();
 		consume(TokenType.SEMICOLON, "Expect ';' after value.");
-		return new Stmt.Print(value);
+		return node(new Stmt.Print(value));
 	}
 
 	private Stmt varDeclaration() {
@@ -144,7 +218,7 @@ public class Parser {
 			initializer = expression();
 		}
 		consume(TokenType.SEMICOLON, "Expect ';' after variable declaration.");
-		return new Stmt.Var(name, initializer);
+		return node(new Stmt.Var(name, initializer));
 	}
 
 	// whileStmt -> "while" "(" expression ")" statement;
@@ -153,13 +227,13 @@ public class Parser {
 		Expr condition = expression();
 		consume(TokenType.RIGHT_PAREN, "Expect ')' after condition.");
 		Stmt body = statement();
-		return new Stmt.While(condition, body);
+		return node(new Stmt.While(condition, body));
 	}
 
 	private Stmt expressionStatement() {
 		Expr expr = expression();
 		consume(TokenType.SEMICOLON, "Expect ';' after value.");
-		return new Stmt.Expression(expr);
+		return node(new Stmt.Expression(expr));
 	}
 
 	private List<Stmt> block() {
@@ -171,129 +245,93 @@ public class Parser {
 		return statements;
 	}
 
-	// assignment -> IDENTIFIER "=" assignment | logic_or ;
-	private Expr assignment() {
-		Expr expr = or();
-
-		if (match(TokenType.EQUAL)) {
-			Token equals = previous();
-			Expr value = assignment();
-			if (expr instanceof Expr.Variable) {
-				Token name = ((Expr.Variable) expr).name;
-				return new Expr.Assign(name, value);
+	// Precedence climbing: parses an operand, then keeps folding in infix
+	// operators for as long as they bind at least as tightly as minimum.
+	private Expr expression(int minimum) {
+		Expr expr = unary();
+		while (true) {
+			TokenType type = peek().type;
+			int precedence = PRECEDENCE[type.ordinal()];
+			if (precedence < minimum) {
+				return expr;
+			}
+			Token operator = advance();
+			Expr right = expression(RIGHT_ASSOCIATIVE.contains(type) ? precedence : precedence + 1);
+			if (type == TokenType.EQUAL) {
+				expr = assignment(expr, operator, right);
+			} else if (LOGICAL.contains(type)) {
+				expr = node(new Expr.Logical(expr, operator, right));
+			} else {
+				expr = node(new Expr.Binary(expr, operator, right));
 			}
-			error(equals, "Invalid assignment target.");
-		}
-		return expr;
-	}
-
-	// logic_or -> logic_and ( "or" logic_and )*;
-	private Expr or() {
-		Expr expr = and();
-		while (match(TokenType.OR)) {
-			Token operator = previous();
-			Expr right = and();
-			expr = new Expr.Logical(expr, operator, right);
-		}
-		return expr;
-	}
-
-	// logic_and -> equality ( "and" equality )* ;
-	private Expr and() {
-		Expr expr = equality();
-		while (match(TokenType.AND)) {
-			Token operator = previous();
-			Expr right = equality();
-			expr = new Expr.Logical(expr, operator, right);
-		}
-		return expr;
-	}
-
-	// equality -> comparison (("!=" | "==") comparison)*
-	private Expr equality() {
-		Expr expr = comparison();
-		while (match(TokenType.NOT_EQUAL, TokenType.EQUAL_EQUAL)) {
-			Token operator = previous();
-			Expr right = comparison();
-			expr = new Expr.Binary(expr, operator, right);
-		}
-		return expr;
-	}
-
-	// comparison -> term ((">" | ">=" | "<" | "<=") term)*
-	private Expr comparison() {
-		Expr expr = term();
-		while (match(TokenType.GREATER, TokenType.GREATER_EQUAL, TokenType.LESS, TokenType.LESS_EQUAL)) {
-			Token operator = previous();
-			Expr right = term();
-			expr = new Expr.Binary(expr, operator, right);
-		}
-		return expr;
-	}
-
-	// term -> factor (("-" | "+") factor)*
-	private Expr term() {
-		Expr expr = factor();
-		while (match(TokenType.MINUS, TokenType.PLUS)) {
-			Token operator = previous();
-			Expr right = term();
-			expr = new Expr.Binary(expr, operator, right);
 		}
-		return expr;
 	}
 
-	// factor -> unary (("/" | "*") unary)*
-	private Expr factor() {
-		Expr expr = unary();
-		while (match(TokenType.SLASH, TokenType.STAR)) {
-			Token operator = previous();
-			Expr right = unary();
-			expr = new Expr.Binary(expr, operator, right);
+	// An invalid target is reported without throwing; the target is kept and
+	// the value dropped. The Assign takes the place of the Variable target, so
+	// it isn't counted again.
+	private Expr assignment(Expr target, Token equals, Expr value) {
+		if (target instanceof Expr.Variable) {
+			Token name = ((Expr.Variable) target).name;
+			return new Expr.Assign(name, value);
 		}
-		return expr;
+		error(equals, "Invalid assignment target.");
+		return target;
 	}
 
 	// unary -> ("!" | "-") unary | primary
 	private Expr unary() {
-		if (match(TokenType.NOT, TokenType.MINUS)) {
-			Token operator = previous();
+		if (PREFIX.contains(peek().type)) {
+			Token operator = advance();
 			Expr right = unary();
-			return new Expr.Unary(operator, right);
+			return node(new Expr.Unary(operator, right));
 		}
 		return primary();
 	}
 
+	// Literals keep no token, so the line of the one just consumed is noted
+	// for tools that report by line.
+	private Expr literal(Object value) {
+		Expr.Literal literal = node(new Expr.Literal(value));
+		literal.line = previous().line;
+		return literal;
+	}
+
 	// primary -> NUMBER | STRING | "true" | "false" | "nil" | "(" expression ")"
 	private Expr primary() {
-		if (match(TokenType.FALSE)) {
-			return new Expr.Literal(false);
-		}
-		if (match(TokenType.TRUE)) {
-			return new Expr.Literal(true);
-		}
-		if (match(TokenType.NIL)) {
-			return new Expr.Literal(null);
-		}
-		if (match(TokenType.NUMBER, TokenType.STRING)) {
-			return new Expr.Literal(previous().literal);
-		}
-		if (match(TokenType.IDENTIFIER)) {
-			return new Expr.Variable(previous());
-		}
-		if (match(TokenType.LEFT_PAREN)) {
-			Expr expr = expression();
-			consume(TokenType.RIGHT_PAREN, "Expect ')' after expression.");
-			return new Expr.Grouping(expr);
+		switch (peek().type) {
+			case TokenType.FALSE:
+				advance();
+				return literal(false);
+			case TokenType.TRUE:
+				advance();
+				return literal(true);
+			case TokenType.NIL:
+				advance();
+				return literal(null);
+			case TokenType.NUMBER:
+			case TokenType.STRING:
+				return literal(advance().literal);
+			case TokenType.IDENTIFIER:
+				return node(new Expr.Variable(advance()));
+			case TokenType.LEFT_PAREN:
+				advance();
+				Expr expr = expression();
+				consume(TokenType.RIGHT_PAREN, "Expect ')' after expression.");
+				return node(new Expr.Grouping(expr));
 		}
 		throw error(peek(), "Expect expression.");
 	}
 
-	private boolean match(TokenType... types) {
-		for (TokenType type : types) {
-			if (check(type)) {
-				advance();
-				return true;
-			}
+	private <T> T node(T node) {
+		nodeCount++;
+		return node;
+	}
+
+	private boolean match(TokenType type) {
+		if (check(type)) {
+			advance();
+			return true;
 		}
 		return false;
 	}
@@ -314,7 +352,8 @@ public class Parser {
 
 	private Token advance() {
 		if (!isAtEnd()) {
-			current++;
+			previous = next;
+			next = source.nextToken();
 		}
 		return previous();
 	}
@@ -324,15 +363,16 @@ public class Parser {
 	}
 
 	private Token peek() {
-		return tokens.get(current);
+		return next;
 	}
 
 	private Token previous() {
-		return tokens.get(current - 1);
+		return previous;
 	}
 
 	private ParseError error(Token token, String message) {
-		Lox.error(token, message);
+		errorTokens.add(token);
+		errorMessages.add(message);
 		return new ParseError();
 	}
 
@@ -0,0 +1,249 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Measurements behind --profile. ProfilingInterpreter reports every node it
+ * enters and leaves; the Profiler keeps a call count and self/total time per
+ * source line, and self time per distinct path of nodes (a calling-context
+ * tree) for flame graphs.
+ *
+ * A node's line is that of its operator or name token; a statement takes
+ * the line of the expression it starts with. Nodes without a line of their
+ * own (e.g. the literal a desugared for loop makes up) are charged to the
+ * line of the node they run under. Total time counts only the outermost
+ * activation of a line, so nesting on one line isn't counted twice.
+ */
+public class Profiler {
+	private static final int REPORTED_LINES = 20;
+
+	// What is known about a node: its line and its frame name.
+	private static class Site {
+		final int line;
+		final String label;
+		// The frame name with the line appended, when the line is known.
+		final String lineLabel;
+
+		Site(int line, String label) {
+			this.line = line;
+			this.label = label;
+			this.lineLabel = line > 0 ? label + ":" + line : null;
+		}
+	}
+
+	// A node in the calling-context tree.
+	private static class Frame {
+		final String label;
+		final Map<String, Frame> children = new HashMap<>();
+		long selfNanos = 0;
+
+		Frame(String label) {
+			this.label = label;
+		}
+	}
+
+	private final Map<Object, Site> sites = new IdentityHashMap<>();
+	private final Frame root = new Frame(null);
+
+	// Per line.
+	private long[] calls = new long[64];
+	private long[] selfNanos = new long[64];
+	private long[] totalNanos = new long[64];
+	private int[] active = new int[64];
+
+	// The nodes currently running, innermost last.
+	private Frame[] frames = new Frame[64];
+	private int[] lines = new int[64];
+	private long[] starts = new long[64];
+	private long[] childNanos = new long[64];
+	private int depth = 0;
+
+	public Profiler() {
+		frames[0] = root;
+	}
+
+	void enter(Object node) {
+		Site site = sites.get(node);
+		if (site == null) {
+			site = new Site(lineOf(node), labelOf(node));
+			sites.put(node, site);
+		}
+		int line = site.line > 0 ? site.line : lines[depth];
+		if (depth + 1 == frames.length) {
+			growStack();
+		}
+		if (line >= calls.length) {
+			growLines(line);
+		}
+		Frame parent = frames[depth];
+		String label = site.lineLabel != null ? site.lineLabel : site.label + ":" + (line > 0 ? line : "?");
+		Frame frame = parent.children.get(label);
+		if (frame == null) {
+			frame = new Frame(label);
+			parent.children.put(label, frame);
+		}
+		depth++;
+		frames[depth] = frame;
+		lines[depth] = line;
+		childNanos[depth] = 0;
+		active[line]++;
+		calls[line]++;
+		starts[depth] = System.nanoTime();
+	}
+
+	void exit() {
+		long elapsed = System.nanoTime() - starts[depth];
+		long self = elapsed - childNanos[depth];
+		int line = lines[depth];
+		frames[depth].selfNanos += self;
+		selfNanos[line] += self;
+		if (--active[line] == 0) {
+			totalNanos[line] += elapsed;
+		}
+		frames[depth] = null;
+		depth--;
+		childNanos[depth] += elapsed;
+	}
+
+	// Hottest lines by self time.
+	void report(PrintStream out) {
+		long total = 0;
+		List<Integer> hot = new ArrayList<>();
+		for (int line = 0; line < calls.length; line++) {
+			total += selfNanos[line];
+			if (calls[line] > 0) {
+				hot.add(line);
+			}
+		}
+		hot.sort((a, b) -> Long.compare(selfNanos[b], selfNanos[a]));
+		out.println("Profile: " + String.format("%.2f", total / 1e6) + " ms in interpreted code");
+		out.println(String.format("%8s %12s %7s %12s %12s", "line", "self ms", "self %", "total ms", "calls"));
+		for (int line : hot.subList(0, Math.min(REPORTED_LINES, hot.size()))) {
+			out.println(String.format("%8s %12.2f %6.1f%% %12.2f %12d", line > 0 ? line : "?",
+					selfNanos[line] / 1e6, total > 0 ? 100.0 * selfNanos[line] / total : 0.0,
+					totalNanos[line] / 1e6, calls[line]));
+		}
+	}
+
+	// One line per path through the calling-context tree, in the folded
+	// format flame graph tools read: "frame;frame;frame <self microseconds>".
+	void writeFoldedStacks(Path path) throws IOException {
+		try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			StringBuilder stack = new StringBuilder();
+			for (Frame frame : root.children.values()) {
+				writeFolded(frame, stack, writer);
+			}
+		}
+	}
+
+	private void writeFolded(Frame frame, StringBuilder stack, Writer writer) throws IOException {
+		int length = stack.length();
+		if (length > 0) {
+			stack.append(';');
+		}
+		stack.append(frame.label);
+		long micros = frame.selfNanos / 1000;
+		if (micros > 0) {
+			writer.append(stack).append(' ').append(Long.toString(micros)).append('\n');
+		}
+		for (Frame child : frame.children.values()) {
+			writeFolded(child, stack, writer);
+		}
+		stack.setLength(length);
+	}
+
+	private void growStack() {
+		int size = frames.length * 2;
+		frames = Arrays.copyOf(frames, size);
+		lines = Arrays.copyOf(lines, size);
+		starts = Arrays.copyOf(starts, size);
+		childNanos = Arrays.copyOf(childNanos, size);
+	}
+
+	private void growLines(int line) {
+		int size = Math.max(calls.length * 2, line + 1);
+		calls = Arrays.copyOf(calls, size);
+		selfNanos = Arrays.copyOf(selfNanos, size);
+		totalNanos = Arrays.copyOf(totalNanos, size);
+		active = Arrays.copyOf(active, size);
+	}
+
+	private static int lineOf(Object node) {
+		if (node instanceof Expr.Binary binary) {
+			return binary.operator.line;
+		} else if (node instanceof Expr.Logical logical) {
+			return logical.operator.line;
+		} else if (node instanceof Expr.Unary unary) {
+			return unary.operator.line;
+		} else if (node instanceof Expr.Assign assign) {
+			return assign.name.line;
+		} else if (node instanceof Expr.Variable variable) {
+			return variable.name.line;
+		} else if (node instanceof Expr.Literal literal) {
+			return literal.line;
+		} else if (node instanceof Expr.Grouping grouping) {
+			return lineOf(grouping.expression);
+		} else if (node instanceof Expr.Invariant invariant) {
+			return lineOf(invariant.expression);
+		} else if (node instanceof Expr.Increment increment) {
+			return increment.assign.name.line;
+		} else if (node instanceof Expr.CompareVariables compare) {
+			return compare.binary.operator.line;
+		} else if (node instanceof Expr.CompareConstant compare) {
+			return compare.binary.operator.line;
+		} else if (node instanceof Stmt.NumericWhile whileStmt) {
+			return lineOf(whileStmt.loop.condition);
+		} else if (node instanceof Stmt.Var var) {
+			return var.name.line;
+		} else if (node instanceof Stmt.Print print) {
+			return lineOf(print.expression);
+		} else if (node instanceof Stmt.Expression expression) {
+			return lineOf(expression.expression);
+		} else if (node instanceof Stmt.If ifStmt) {
+			return lineOf(ifStmt.condition);
+		} else if (node instanceof Stmt.While whileStmt) {
+			return lineOf(whileStmt.condition);
+		} else if (node instanceof Stmt.Block block) {
+			for (Stmt statement : block.statements) {
+				int line = lineOf(statement);
+				if (line > 0) {
+					return line;
+				}
+			}
+		}
+		return 0;
+	}
+
+	private static String labelOf(Object node) {
+		String kind = node.getClass().getSimpleName();
+		if (node instanceof Expr.Binary binary) {
+			return kind + "(" + binary.operator.lexeme + ")";
+		} else if (node instanceof Expr.Logical logical) {
+			return kind + "(" + logical.operator.lexeme + ")";
+		} else if (node instanceof Expr.Unary unary) {
+			return kind + "(" + unary.operator.lexeme + ")";
+		} else if (node instanceof Expr.Assign assign) {
+			return kind + "(" + assign.name.lexeme + ")";
+		} else if (node instanceof Expr.Variable variable) {
+			return kind + "(" + variable.name.lexeme + ")";
+		} else if (node instanceof Stmt.Var var) {
+			return kind + "(" + var.name.lexeme + ")";
+		} else if (node instanceof Expr.Increment increment) {
+			return kind + "(" + increment.assign.name.lexeme + ")";
+		} else if (node instanceof Expr.CompareVariables compare) {
+			return kind + "(" + compare.binary.operator.lexeme + ")";
+		} else if (node instanceof Expr.CompareConstant compare) {
+			return kind + "(" + compare.binary.operator.lexeme + ")";
+		}
+		return kind;
+	}
+}
@@ -0,0 +1,37 @@
+/*
+ * Tree walker for --profile: every evaluate()/execute() is bracketed by the
+ * Profiler. Keeping the instrumentation in a subclass means the ordinary
+ * Interpreter has no profiling branches at all.
+ *
+ * Numeric subexpressions the Interpreter evaluates on its primitive double
+ * path don't go through evaluate(), so their time shows up as self time of
+ * the enclosing node.
+ */
+public class ProfilingInterpreter extends Interpreter {
+	private final Profiler profiler;
+
+	public ProfilingInterpreter(Output output, ErrorReporter reporter, Profiler profiler) {
+		super(output, reporter);
+		this.profiler = profiler;
+	}
+
+	@Override
+	public Object evaluate(Expr expr) {
+		profiler.enter(expr);
+		try {
+			return super.evaluate(expr);
+		} finally {
+			profiler.exit();
+		}
+	}
+
+	@Override
+	void execute(Stmt stmt) {
+		profiler.enter(stmt);
+		try {
+			super.execute(stmt);
+		} finally {
+			profiler.exit();
+		}
+	}
+}
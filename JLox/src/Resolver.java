@@ -0,0 +1,250 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Static pass run between the Parser and the Interpreter. Every local variable
+ * is given a slot in the program's single frame: each block that declares
+ * anything takes a run of slots right after those of the blocks around it,
+ * and hands them back when it ends, so sibling blocks share slots and
+ * shadowing variables never do. Every Variable/Assign expression that refers
+ * to a local records that slot, plus how many declaring blocks out its
+ * variable was declared (depth), which the optimizers and the JIT scope by.
+ * References that don't resolve to a local are left at depth -1 and looked
+ * up by name in the globals.
+ *
+ * It also marks every Var whose variable is ever assigned or redeclared, so
+ * later passes know which initializers are safe to propagate.
+ */
+public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+	// One map per enclosing block, innermost last: name -> latest declaration.
+	private final List<Map<String, Stmt.Var>> scopes = new ArrayList<>();
+	// First frame slot not taken by an enclosing block.
+	private int nextSlot = 0;
+	private final Map<String, List<Stmt.Var>> globalDeclarations = new HashMap<>();
+	private final Set<String> assignedGlobals = new HashSet<>();
+
+	void resolve(List<Stmt> statements) {
+		resolveAll(statements);
+		for (Map.Entry<String, List<Stmt.Var>> entry : globalDeclarations.entrySet()) {
+			List<Stmt.Var> declarations = entry.getValue();
+			if (declarations.size() > 1 || assignedGlobals.contains(entry.getKey())) {
+				for (Stmt.Var declaration : declarations) {
+					declaration.reassigned = true;
+				}
+			}
+		}
+	}
+
+	private void resolveAll(List<Stmt> statements) {
+		for (Stmt statement : statements) {
+			resolve(statement);
+		}
+	}
+
+	private void resolve(Stmt stmt) {
+		stmt.accept(this);
+	}
+
+	private void resolve(Expr expr) {
+		expr.accept(this);
+	}
+
+	private void beginScope() {
+		scopes.add(new HashMap<>());
+	}
+
+	private int endScope() {
+		int size = scopes.remove(scopes.size() - 1).size();
+		nextSlot -= size;
+		return size;
+	}
+
+	// Redeclaring a name in the same block reuses its slot, just like define()
+	// overwrites the old value.
+	private void declare(Stmt.Var stmt) {
+		Map<String, Stmt.Var> scope = scopes.get(scopes.size() - 1);
+		Stmt.Var previous = scope.get(stmt.name.lexeme);
+		if (previous != null) {
+			previous.reassigned = true;
+			stmt.reassigned = true;
+			stmt.slot = previous.slot;
+		} else {
+			stmt.slot = nextSlot++;
+		}
+		scope.put(stmt.name.lexeme, stmt);
+	}
+
+	// Returns {depth, slot}, or null when the name isn't a local.
+	private int[] resolveLocal(Token name, boolean assignment) {
+		for (int i = scopes.size() - 1; i >= 0; i--) {
+			Stmt.Var declaration = scopes.get(i).get(name.lexeme);
+			if (declaration != null) {
+				if (assignment) {
+					declaration.reassigned = true;
+				}
+				return new int[] { scopes.size() - 1 - i, declaration.slot };
+			}
+		}
+		if (assignment) {
+			assignedGlobals.add(name.lexeme);
+		}
+		return null;
+	}
+
+	// Only blocks that declare something take frame slots, so only they open
+	// a scope and count towards a reference's depth. A Var can
+	// only appear directly in a block's statement list, which makes this
+	// known up front.
+	@Override
+	public Void visitBlockStmt(Stmt.Block stmt) {
+		if (!declaresVariables(stmt)) {
+			resolveAll(stmt.statements);
+			stmt.slots = 0;
+			return null;
+		}
+		beginScope();
+		resolveAll(stmt.statements);
+		stmt.slots = endScope();
+		return null;
+	}
+
+	static boolean declaresVariables(Stmt.Block block) {
+		for (Stmt statement : block.statements) {
+			if (statement instanceof Stmt.Var) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Void visitExpressionStmt(Stmt.Expression stmt) {
+		resolve(stmt.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitIfStmt(Stmt.If stmt) {
+		resolve(stmt.condition);
+		resolve(stmt.thenBranch);
+		if (stmt.elseBranch != null) {
+			resolve(stmt.elseBranch);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitPrintStmt(Stmt.Print stmt) {
+		resolve(stmt.expression);
+		return null;
+	}
+
+	// The initializer is resolved before the name is declared, so
+	// "var a = a;" reads the enclosing 'a' exactly as the tree walker does.
+	@Override
+	public Void visitVarStmt(Stmt.Var stmt) {
+		if (stmt.initializer != null) {
+			resolve(stmt.initializer);
+		}
+		if (!scopes.isEmpty()) {
+			declare(stmt);
+		} else {
+			globalDeclarations.computeIfAbsent(stmt.name.lexeme, k -> new ArrayList<>()).add(stmt);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitWhileStmt(Stmt.While stmt) {
+		resolve(stmt.condition);
+		resolve(stmt.body);
+		return null;
+	}
+
+	@Override
+	public Void visitNumericWhileStmt(Stmt.NumericWhile stmt) {
+		resolve(stmt.loop);
+		return null;
+	}
+
+	@Override
+	public Void visitAssignExpr(Expr.Assign expr) {
+		resolve(expr.value);
+		int[] local = resolveLocal(expr.name, true);
+		if (local != null) {
+			expr.depth = local[0];
+			expr.slot = local[1];
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitBinaryExpr(Expr.Binary expr) {
+		resolve(expr.left);
+		resolve(expr.right);
+		return null;
+	}
+
+	@Override
+	public Void visitGroupingExpr(Expr.Grouping expr) {
+		resolve(expr.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitInvariantExpr(Expr.Invariant expr) {
+		resolve(expr.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitIncrementExpr(Expr.Increment expr) {
+		resolve(expr.assign);
+		return null;
+	}
+
+	@Override
+	public Void visitCompareVariablesExpr(Expr.CompareVariables expr) {
+		resolve(expr.binary);
+		return null;
+	}
+
+	@Override
+	public Void visitCompareConstantExpr(Expr.CompareConstant expr) {
+		resolve(expr.binary);
+		return null;
+	}
+
+	@Override
+	public Void visitLiteralExpr(Expr.Literal expr) {
+		return null;
+	}
+
+	@Override
+	public Void visitLogicalExpr(Expr.Logical expr) {
+		resolve(expr.left);
+		resolve(expr.right);
+		return null;
+	}
+
+	@Override
+	public Void visitVariableExpr(Expr.Variable expr) {
+		int[] local = resolveLocal(expr.name, false);
+		if (local != null) {
+			expr.depth = local[0];
+			expr.slot = local[1];
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryExpr(Expr.Unary expr) {
+		resolve(expr.right);
+		return null;
+	}
+}
@@ -0,0 +1,101 @@
+import java.util.ArrayDeque;
+
+/*
+ * A Lox string made by +, kept as the two strings it joins rather than a
+ * copy of their characters, so building a string up in a loop costs linear
+ * rather than quadratic time and garbage. It is flattened into a String,
+ * once, only when its characters are needed: when it's printed (stringify),
+ * compared (isEqual) or folded into a constant.
+ *
+ * A Lox string value is therefore either a String or a Rope, and code that
+ * asks whether a value is a string tests for CharSequence.
+ */
+final class Rope implements CharSequence {
+	// Shorter results are copied right away; a node costs more than a few
+	// chars do.
+	private static final int MIN_LENGTH = 64;
+
+	// Both null once flattened.
+	private CharSequence left;
+	private CharSequence right;
+	private final int length;
+	private String flat = null;
+
+	private Rope(CharSequence left, CharSequence right, int length) {
+		this.left = left;
+		this.right = right;
+		this.length = length;
+	}
+
+	static CharSequence concat(CharSequence left, CharSequence right) {
+		int length = left.length() + right.length();
+		if (length < MIN_LENGTH) {
+			return left.toString().concat(right.toString());
+		}
+		if (left.length() == 0) {
+			return right;
+		}
+		if (right.length() == 0) {
+			return left;
+		}
+		// A short piece joining a rope whose nearest leaf is short too is
+		// merged into that leaf, so adding a char at a time in a loop makes
+		// a node per MIN_LENGTH or so chars, not one per char.
+		if (right.length() < MIN_LENGTH && left instanceof Rope rope && rope.flat == null
+				&& rope.right.length() < MIN_LENGTH) {
+			return new Rope(rope.left, rope.right.toString().concat(right.toString()), length);
+		}
+		if (left.length() < MIN_LENGTH && right instanceof Rope rope && rope.flat == null
+				&& rope.left.length() < MIN_LENGTH) {
+			return new Rope(left.toString().concat(rope.left.toString()), rope.right, length);
+		}
+		return new Rope(left, right, length);
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		return toString().charAt(index);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return toString().subSequence(start, end);
+	}
+
+	@Override
+	public String toString() {
+		if (flat == null) {
+			flat = flatten();
+			left = null;
+			right = null;
+		}
+		return flat;
+	}
+
+	// Copies the leaves right to left with an explicit stack: a string built
+	// in a loop is a tree as deep as the loop ran long.
+	private String flatten() {
+		char[] chars = new char[length];
+		int end = length;
+		ArrayDeque<CharSequence> pending = new ArrayDeque<>();
+		pending.push(left);
+		pending.push(right);
+		while (!pending.isEmpty()) {
+			CharSequence part = pending.pop();
+			if (part instanceof Rope rope && rope.flat == null) {
+				pending.push(rope.left);
+				pending.push(rope.right);
+				continue;
+			}
+			String text = part.toString();
+			end -= text.length();
+			text.getChars(0, text.length(), chars, end);
+		}
+		return new String(chars);
+	}
+}
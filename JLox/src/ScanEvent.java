@@ -0,0 +1,26 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/*
+ * Flight Recorder event for scanning one program. The Parser pulls tokens
+ * from the Scanner as it goes, so the event spans scanning and parsing
+ * together; scanTime is the part of it spent inside the Scanner.
+ */
+@Name("jlox.Scan")
+@Label("Scan")
+@Category("JLox")
+@Description("Tokenizing a Lox program")
+public class ScanEvent extends jdk.jfr.Event {
+	@Label("Script")
+	String script;
+
+	@Label("Tokens")
+	long tokens;
+
+	@Label("Scan Time")
+	@Timespan
+	long scanTime;
+}
@@ -1,30 +1,118 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
-public class Scanner {
-	private final String source;
-	private final List<Token> tokens = new ArrayList<>();
-	private static final Map<String, TokenType> keywords;
+/*
+ * Source is pulled from a Reader through a sliding window: only the text of
+ * the token being scanned has to stay in memory, so scanning a huge file
+ * takes a bounded buffer rather than a copy of the whole file. Positions
+ * (start, current) are absolute offsets into the source.
+ */
+public class Scanner implements TokenSource {
+	private static final int WINDOW = 8192;
+	private final Reader reader;
+	private final ErrorReporter reporter;
+	// Identifier ids; those of the session whose globals the program will use.
+	private final Symbols symbols;
+	private char[] buffer = new char[WINDOW];
+	// Absolute offsets of buffer[0] and one past the last char read so far.
+	private int bufferStart = 0;
+	private int bufferEnd = 0;
+	private boolean exhausted = false;
+	// The token scanToken() just produced, if any; null type when it only
+	// skipped whitespace, a comment or an error.
+	private TokenType scannedType = null;
+	private Object scannedLiteral = null;
+	private int scannedLine = 0;
+	// Tokens produced so far, EOF not included.
+	long tokenCount = 0;
+	// Shared lexemes for tokens whose text is always the same (punctuation and
+	// keywords), so scanning them allocates no String.
+	private static final String[] fixedLexemes;
 	private int start = 0;
 	private int current = 0;
 	private int line = 1;
 
 	public Scanner(String sourceIn) {
-		this.source = sourceIn;
+		this(new StringReader(sourceIn));
+	}
+
+	public Scanner(Reader readerIn) {
+		this(readerIn, new ErrorReporter());
+	}
+
+	public Scanner(String sourceIn, ErrorReporter reporter) {
+		this(new StringReader(sourceIn), reporter);
+	}
+
+	public Scanner(Reader readerIn, ErrorReporter reporter) {
+		this(readerIn, reporter, new Symbols());
+	}
+
+	Scanner(String sourceIn, ErrorReporter reporter, Symbols symbols) {
+		this(new StringReader(sourceIn), reporter, symbols);
+	}
+
+	Scanner(Reader readerIn, ErrorReporter reporter, Symbols symbols) {
+		this.reader = readerIn;
+		this.reporter = reporter;
+		this.symbols = symbols;
 	}
 
 	List<Token> scanTokens() {
+		List<Token> tokens = new ArrayList<>();
+		Token token;
+		do {
+			token = nextToken();
+			tokens.add(token);
+		} while (token.type != TokenType.EOF);
+		return tokens;
+	}
+
+	// Scans the whole source into struct-of-arrays form, without creating a
+	// Token (or, for most tokens, a String) per token.
+	TokenBuffer scanTokenBuffer() {
+		TokenBuffer tokens = new TokenBuffer(symbols);
 		while (!isAtEnd()) {
 			start = current;
 			scanToken();
+			if (scannedType != null) {
+				tokens.add(scannedType, buffer, start - bufferStart, current - start, scannedLiteral, scannedLine);
+				scannedType = null;
+				scannedLiteral = null;
+			}
 		}
-
-		tokens.add(new Token(TokenType.EOF, "", null, line));
+		tokens.add(TokenType.EOF, buffer, 0, 0, null, line);
 		return tokens;
 	}
 
+	// Scans just far enough to produce the next token; EOF once the source is
+	// exhausted.
+	@Override
+	public Token nextToken() {
+		while (!isAtEnd()) {
+			start = current;
+			scanToken();
+			if (scannedType == TokenType.IDENTIFIER) {
+				// A name seen before costs a table probe, not a new String.
+				int symbol = symbols.intern(buffer, start - bufferStart, current - start);
+				scannedType = null;
+				return new Token(TokenType.IDENTIFIER, symbols.name(symbol), null, scannedLine, symbol);
+			}
+			if (scannedType != null) {
+				Token token = new Token(scannedType, lexeme(), scannedLiteral, scannedLine);
+				scannedType = null;
+				scannedLiteral = null;
+				return token;
+			}
+		}
+		return new Token(TokenType.EOF, "", null, line);
+	}
+
 	private void scanToken() {
 		char c = advance();
 		switch (c) {
@@ -95,7 +183,7 @@ public class Scanner {
 				} else if (isAlpha(c)) {
 					identifier();
 				} else {
-					Lox.error(line, "Unexpected character.");
+					reporter.error(line, "Unexpected character.");
 					break;
 				}
 		}
@@ -106,12 +194,76 @@ public class Scanner {
 		while (isAlphaNumeric(peek())) {
 			advance();
 		}
-		String text = source.substring(start, current);
-		TokenType type = keywords.get(text);
-		if (type == null) {
-			type = TokenType.IDENTIFIER;
+		addToken(keywordType());
+	}
+
+	// Recognizes keywords straight from the buffered chars with a switch on
+	// the first (and for 'f'/'t' the second) letter, instead of building the
+	// identifier's String just to look it up.
+	private TokenType keywordType() {
+		switch (charAt(start)) {
+			case 'a':
+				return checkKeyword(1, "nd", TokenType.AND);
+			case 'c':
+				return checkKeyword(1, "lass", TokenType.CLASS);
+			case 'e':
+				return checkKeyword(1, "lse", TokenType.ELSE);
+			case 'f':
+				if (current - start > 1) {
+					switch (charAt(start + 1)) {
+						case 'a':
+							return checkKeyword(2, "lse", TokenType.FALSE);
+						case 'o':
+							return checkKeyword(2, "r", TokenType.FOR);
+						case 'u':
+							return checkKeyword(2, "n", TokenType.FUN);
+					}
+				}
+				break;
+			case 'i':
+				return checkKeyword(1, "f", TokenType.IF);
+			case 'n':
+				return checkKeyword(1, "il", TokenType.NIL);
+			case 'o':
+				return checkKeyword(1, "r", TokenType.OR);
+			case 'p':
+				return checkKeyword(1, "rint", TokenType.PRINT);
+			case 'r':
+				return checkKeyword(1, "eturn", TokenType.RETURN);
+			case 's':
+				return checkKeyword(1, "uper", TokenType.SUPER);
+			case 't':
+				if (current - start > 1) {
+					switch (charAt(start + 1)) {
+						case 'h':
+							return checkKeyword(2, "is", TokenType.THIS);
+						case 'r':
+							return checkKeyword(2, "ue", TokenType.TRUE);
+					}
+				}
+				break;
+			case 'v':
+				return checkKeyword(1, "ar", TokenType.VAR);
+			case 'w':
+				return checkKeyword(1, "hile", TokenType.WHILE);
+		}
+		return TokenType.IDENTIFIER;
+	}
+
+	private TokenType checkKeyword(int offset, String rest, TokenType type) {
+		if (current - start != offset + rest.length()) {
+			return TokenType.IDENTIFIER;
+		}
+		for (int i = 0; i < rest.length(); i++) {
+			if (charAt(start + offset + i) != rest.charAt(i)) {
+				return TokenType.IDENTIFIER;
+			}
 		}
-		addToken(type);
+		return type;
+	}
+
+	private char charAt(int position) {
+		return buffer[position - bufferStart];
 	}
 
 	// Helper method to tokenize and handl numbers
@@ -126,7 +278,7 @@ public class Scanner {
 				advance();
 			}
 		}
-		addToken(TokenType.NUMBER, Double.parseDouble(source.substring(start, current)));
+		addToken(TokenType.NUMBER, Double.parseDouble(text(start, current)));
 	}
 
 	// Helper method to tokenize and handle strings
@@ -138,14 +290,14 @@ public class Scanner {
 			advance();
 		}
 		if (isAtEnd()) {
-			Lox.error(line, "Unterminated string.");
+			reporter.error(line, "Unterminated string.");
 			return;
 		}
 
 		advance(); // The closing ".
 
 		// Trim surrounding quotes.
-		String value = source.substring(start + 1, current - 1);
+		String value = text(start + 1, current - 1);
 		addToken(TokenType.STRING, value);
 	}
 
@@ -154,7 +306,7 @@ public class Scanner {
 		if (isAtEnd()) {
 			return false;
 		}
-		if (source.charAt(current) != expected) {
+		if (buffer[current - bufferStart] != expected) {
 			return false;
 		}
 		current++;
@@ -166,14 +318,16 @@ public class Scanner {
 		if (isAtEnd()) {
 			return '\0';
 		}
-		return source.charAt(current);
+		return buffer[current - bufferStart];
 	}
 
 	private char doublePeek() {
-		if (current + 1 >= source.length()) {
-			return '\0';
+		while (current + 1 >= bufferEnd) {
+			if (!fill()) {
+				return '\0';
+			}
 		}
-		return source.charAt(current + 1);
+		return buffer[current + 1 - bufferStart];
 	}
 
 	private boolean isAlpha(char c) {
@@ -189,11 +343,46 @@ public class Scanner {
 	}
 
 	private boolean isAtEnd() {
-		return current >= source.length();
+		return current >= bufferEnd && !fill();
+	}
+
+	// Reads more source into the window, first dropping everything before the
+	// current token. Returns false once the reader is exhausted.
+	private boolean fill() {
+		if (exhausted) {
+			return false;
+		}
+		int used = bufferEnd - start;
+		if (start > bufferStart) {
+			System.arraycopy(buffer, start - bufferStart, buffer, 0, used);
+			bufferStart = start;
+		}
+		if (used == buffer.length) {
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+		}
+		int read;
+		try {
+			read = reader.read(buffer, used, buffer.length - used);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if (read <= 0) {
+			exhausted = true;
+			return false;
+		}
+		bufferEnd = bufferStart + used + read;
+		return true;
+	}
+
+	private String text(int from, int to) {
+		return new String(buffer, from - bufferStart, to - from);
 	}
 
 	private char advance() {
-		return source.charAt(current++);
+		if (isAtEnd()) {
+			return '\0';
+		}
+		return buffer[current++ - bufferStart];
 	}
 
 	private void addToken(TokenType type) {
@@ -201,27 +390,65 @@ public class Scanner {
 	}
 
 	private void addToken(TokenType type, Object literal) {
-		String text = source.substring(start, current);
-		tokens.add(new Token(type, text, literal, line));
+		tokenCount++;
+		scannedType = type;
+		scannedLiteral = literal;
+		scannedLine = line;
+	}
+
+	private String lexeme() {
+		String text = fixedLexemes[scannedType.ordinal()];
+		if (text == null) {
+			text = text(start, current);
+		}
+		return text;
+	}
+
+	// The shared lexeme for a token type, or null when its text varies.
+	static String fixedLexeme(TokenType type) {
+		return fixedLexemes[type.ordinal()];
+	}
+
+	private static void fix(TokenType type, String lexeme) {
+		fixedLexemes[type.ordinal()] = lexeme;
 	}
 
 	static {
-		keywords = new HashMap<>();
-		keywords.put("and", TokenType.AND);
-		keywords.put("class", TokenType.CLASS);
-		keywords.put("else", TokenType.ELSE);
-		keywords.put("false", TokenType.FALSE);
-		keywords.put("for", TokenType.FOR);
-		keywords.put("fun", TokenType.FUN);
-		keywords.put("if", TokenType.IF);
-		keywords.put("nil", TokenType.NIL);
-		keywords.put("or", TokenType.OR);
-		keywords.put("print", TokenType.PRINT);
-		keywords.put("return", TokenType.RETURN);
-		keywords.put("super", TokenType.SUPER);
-		keywords.put("this", TokenType.THIS);
-		keywords.put("true", TokenType.TRUE);
-		keywords.put("var", TokenType.VAR);
-		keywords.put("while", TokenType.WHILE);
+		fixedLexemes = new String[TokenType.values().length];
+		fix(TokenType.LEFT_PAREN, "(");
+		fix(TokenType.RIGHT_PAREN, ")");
+		fix(TokenType.LEFT_BRACE, "{");
+		fix(TokenType.RIGHT_BRACE, "}");
+		fix(TokenType.COMMA, ",");
+		fix(TokenType.DOT, ".");
+		fix(TokenType.MINUS, "-");
+		fix(TokenType.PLUS, "+");
+		fix(TokenType.SEMICOLON, ";");
+		fix(TokenType.SLASH, "/");
+		fix(TokenType.STAR, "*");
+		fix(TokenType.NOT, "!");
+		fix(TokenType.NOT_EQUAL, "!=");
+		fix(TokenType.EQUAL, "=");
+		fix(TokenType.EQUAL_EQUAL, "==");
+		fix(TokenType.GREATER, ">");
+		fix(TokenType.GREATER_EQUAL, ">=");
+		fix(TokenType.LESS, "<");
+		fix(TokenType.LESS_EQUAL, "<=");
+		fix(TokenType.AND, "and");
+		fix(TokenType.CLASS, "class");
+		fix(TokenType.ELSE, "else");
+		fix(TokenType.FALSE, "false");
+		fix(TokenType.FOR, "for");
+		fix(TokenType.FUN, "fun");
+		fix(TokenType.IF, "if");
+		fix(TokenType.NIL, "nil");
+		fix(TokenType.OR, "or");
+		fix(TokenType.PRINT, "print");
+		fix(TokenType.RETURN, "return");
+		fix(TokenType.SUPER, "super");
+		fix(TokenType.THIS, "this");
+		fix(TokenType.TRUE, "true");
+		fix(TokenType.VAR, "var");
+		fix(TokenType.WHILE, "while");
 	}
 }
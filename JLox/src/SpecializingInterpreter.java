@@ -0,0 +1,39 @@
+/*
+ * Tree walker whose Binary and Unary sites specialize themselves on the
+ * operand types they observe (see BinaryNode/UnaryNode). Everything else is
+ * inherited from Interpreter, so semantics are unchanged.
+ */
+public class SpecializingInterpreter extends Interpreter {
+
+	public SpecializingInterpreter() {
+	}
+
+	public SpecializingInterpreter(Output output) {
+		super(output);
+	}
+
+	public SpecializingInterpreter(Output output, ErrorReporter reporter) {
+		super(output, reporter);
+	}
+
+	@Override
+	public Object visitBinaryExpr(Expr.Binary expr) {
+		Object left = evaluate(expr.left);
+		Object right = evaluate(expr.right);
+		BinaryNode node = expr.specialized;
+		if (node == null) {
+			return BinaryNode.specializeAndExecute(expr, left, right);
+		}
+		return node.execute(expr, left, right);
+	}
+
+	@Override
+	public Object visitUnaryExpr(Expr.Unary expr) {
+		Object right = evaluate(expr.right);
+		UnaryNode node = expr.specialized;
+		if (node == null) {
+			return UnaryNode.specializeAndExecute(expr, right);
+		}
+		return node.execute(expr, right);
+	}
+}
@@ -13,6 +13,8 @@ public abstract class Stmt {
 		R visitPrintStmt(Print stmt);
 
 		R visitWhileStmt(While stmt);
+
+		R visitNumericWhileStmt(NumericWhile stmt);
 	}
 
 	public static class Block extends Stmt {
@@ -26,6 +28,8 @@ public abstract class Stmt {
 		}
 
 		final List<Stmt> statements;
+
+		int slots = 0;
 	}
 
 	public static class Expression extends Stmt {
@@ -71,6 +75,9 @@ public abstract class Stmt {
 
 		final Token name;
 		final Expr initializer;
+
+		int slot = -1;
+		boolean reassigned = false;
 	}
 
 	public static class Print extends Stmt {
@@ -99,6 +106,21 @@ public abstract class Stmt {
 
 		final Expr condition;
 		final Stmt body;
+
+		List<Expr.Invariant> invariants = null;
+	}
+
+	public static class NumericWhile extends Stmt {
+		NumericWhile(While loop) {
+			this.loop = loop;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitNumericWhileStmt(this);
+		}
+
+		final While loop;
 	}
 
 	abstract <R> R accept(Visitor<R> visitor);
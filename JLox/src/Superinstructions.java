@@ -0,0 +1,167 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Last pass before the tree walker runs a program (--no-fuse turns it off).
+ * It replaces a few frequent shapes with fused nodes that the Interpreter
+ * runs in one step, reading the variables and doing the arithmetic on
+ * primitives instead of dispatching through the visitor once per node:
+ *
+ * - Increment: i = i + 2, i = i - 1 (same variable, number constant)
+ * - CompareVariables: a < b, and likewise <=, > and >=
+ * - CompareConstant: i < 10
+ * - NumericWhile: a while loop whose condition is one of those two
+ *
+ * A fused node keeps the node it was made from. Whenever an operand turns
+ * out not to be a number the Interpreter finishes on that original node, so
+ * results and errors are exactly what they were, and every other visitor
+ * simply sees through a fused node to its original.
+ *
+ * Like LoopOptimizer it works on a resolved tree and returns one that needs
+ * resolving again.
+ */
+public class Superinstructions implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+
+	List<Stmt> fuse(List<Stmt> statements) {
+		List<Stmt> result = new ArrayList<>();
+		for (Stmt statement : statements) {
+			result.add(statement.accept(this));
+		}
+		return result;
+	}
+
+	private Expr fuse(Expr expr) {
+		return expr.accept(this);
+	}
+
+	private static boolean isComparison(TokenType type) {
+		return type == TokenType.LESS || type == TokenType.LESS_EQUAL || type == TokenType.GREATER
+				|| type == TokenType.GREATER_EQUAL;
+	}
+
+	// Whether an assignment writes the variable an expression reads.
+	private static boolean sameVariable(Expr.Assign assign, Expr.Variable variable) {
+		if (assign.depth != variable.depth) {
+			return false;
+		}
+		return assign.depth >= 0 ? assign.slot == variable.slot : assign.name.symbol == variable.name.symbol;
+	}
+
+	@Override
+	public Stmt visitBlockStmt(Stmt.Block stmt) {
+		List<Stmt> statements = new ArrayList<>();
+		for (Stmt statement : stmt.statements) {
+			statements.add(statement.accept(this));
+		}
+		return new Stmt.Block(statements);
+	}
+
+	@Override
+	public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+		return new Stmt.Expression(fuse(stmt.expression));
+	}
+
+	@Override
+	public Stmt visitIfStmt(Stmt.If stmt) {
+		Stmt elseBranch = stmt.elseBranch != null ? stmt.elseBranch.accept(this) : null;
+		return new Stmt.If(fuse(stmt.condition), stmt.thenBranch.accept(this), elseBranch);
+	}
+
+	@Override
+	public Stmt visitPrintStmt(Stmt.Print stmt) {
+		return new Stmt.Print(fuse(stmt.expression));
+	}
+
+	@Override
+	public Stmt visitVarStmt(Stmt.Var stmt) {
+		return new Stmt.Var(stmt.name, stmt.initializer != null ? fuse(stmt.initializer) : null);
+	}
+
+	@Override
+	public Stmt visitWhileStmt(Stmt.While stmt) {
+		Stmt.While loop = new Stmt.While(fuse(stmt.condition), stmt.body.accept(this));
+		loop.invariants = stmt.invariants;
+		if (loop.condition instanceof Expr.CompareVariables || loop.condition instanceof Expr.CompareConstant) {
+			return new Stmt.NumericWhile(loop);
+		}
+		return loop;
+	}
+
+	@Override
+	public Stmt visitNumericWhileStmt(Stmt.NumericWhile stmt) {
+		return stmt;
+	}
+
+	@Override
+	public Expr visitAssignExpr(Expr.Assign expr) {
+		if (expr.value instanceof Expr.Binary binary
+				&& (binary.operator.type == TokenType.PLUS || binary.operator.type == TokenType.MINUS)
+				&& binary.left instanceof Expr.Variable variable && sameVariable(expr, variable)
+				&& binary.right instanceof Expr.Literal literal && literal.value instanceof Double) {
+			// x - c is exactly x + -c in IEEE arithmetic.
+			double delta = binary.operator.type == TokenType.MINUS ? -(double) literal.value : (double) literal.value;
+			return new Expr.Increment(expr, variable, delta);
+		}
+		return new Expr.Assign(expr.name, fuse(expr.value));
+	}
+
+	@Override
+	public Expr visitBinaryExpr(Expr.Binary expr) {
+		if (isComparison(expr.operator.type) && expr.left instanceof Expr.Variable left) {
+			if (expr.right instanceof Expr.Variable right) {
+				return new Expr.CompareVariables(expr, left, right);
+			}
+			if (expr.right instanceof Expr.Literal literal && literal.value instanceof Double) {
+				return new Expr.CompareConstant(expr, left, (double) literal.value);
+			}
+		}
+		return new Expr.Binary(fuse(expr.left), expr.operator, fuse(expr.right));
+	}
+
+	@Override
+	public Expr visitGroupingExpr(Expr.Grouping expr) {
+		return new Expr.Grouping(fuse(expr.expression));
+	}
+
+	@Override
+	public Expr visitLiteralExpr(Expr.Literal expr) {
+		return expr;
+	}
+
+	@Override
+	public Expr visitLogicalExpr(Expr.Logical expr) {
+		return new Expr.Logical(fuse(expr.left), expr.operator, fuse(expr.right));
+	}
+
+	@Override
+	public Expr visitVariableExpr(Expr.Variable expr) {
+		return expr;
+	}
+
+	@Override
+	public Expr visitUnaryExpr(Expr.Unary expr) {
+		return new Expr.Unary(expr.operator, fuse(expr.right));
+	}
+
+	// Evaluated once per loop entry, so not worth fusing inside; its
+	// identity also has to survive, as its loop's invariants list holds it.
+	@Override
+	public Expr visitInvariantExpr(Expr.Invariant expr) {
+		return expr;
+	}
+
+	@Override
+	public Expr visitIncrementExpr(Expr.Increment expr) {
+		return expr;
+	}
+
+	@Override
+	public Expr visitCompareVariablesExpr(Expr.CompareVariables expr) {
+		return expr;
+	}
+
+	@Override
+	public Expr visitCompareConstantExpr(Expr.CompareConstant expr) {
+		return expr;
+	}
+}
@@ -0,0 +1,84 @@
+import java.util.Arrays;
+
+/*
+ * Intern table for the identifiers of one LoxSession. Every distinct name
+ * gets a dense int id the first time it is seen, and the same canonical
+ * String from then on, so the Scanner allocates nothing for a name it has met
+ * before and global lookups index an array by id instead of hashing the name.
+ *
+ * A table lives exactly as long as the globals its ids index, so a long-lived
+ * process (--serve, --batch) holds on to no names beyond its open sessions.
+ * Like the session that owns it, a table belongs to one thread at a time.
+ */
+final class Symbols {
+	private String[] names = new String[64];
+	private int count = 0;
+	// Open-addressed table of id + 1 (0 means empty); always under half full.
+	private int[] table = new int[128];
+
+	int intern(String name) {
+		return intern(name.toCharArray(), 0, name.length());
+	}
+
+	int intern(char[] chars, int offset, int length) {
+		int hash = 0;
+		for (int i = 0; i < length; i++) {
+			hash = 31 * hash + chars[offset + i];
+		}
+		int mask = table.length - 1;
+		for (int index = hash & mask;; index = (index + 1) & mask) {
+			int entry = table[index];
+			if (entry == 0) {
+				return add(new String(chars, offset, length), index);
+			}
+			if (matches(names[entry - 1], chars, offset, length)) {
+				return entry - 1;
+			}
+		}
+	}
+
+	String name(int id) {
+		return names[id];
+	}
+
+	private static boolean matches(String name, char[] chars, int offset, int length) {
+		if (name.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (name.charAt(i) != chars[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int add(String name, int index) {
+		if (count == names.length) {
+			names = Arrays.copyOf(names, count * 2);
+		}
+		int id = count++;
+		names[id] = name;
+		table[index] = id + 1;
+		if (count * 2 > table.length) {
+			rehash();
+		}
+		return id;
+	}
+
+	private void rehash() {
+		int[] grown = new int[table.length * 2];
+		int mask = grown.length - 1;
+		for (int entry : table) {
+			if (entry == 0) {
+				continue;
+			}
+			int index = names[entry - 1].hashCode() & mask;
+			while (grown[index] != 0) {
+				index = (index + 1) & mask;
+			}
+			grown[index] = entry;
+		}
+		table = grown;
+	}
+}
@@ -3,12 +3,21 @@ public class Token {
 	final String lexeme;
 	final Object literal;
 	final int line;
+	// Id of an identifier's name in the Symbols of the session that scanned
+	// it; -1 for other tokens.
+	final int symbol;
 
+	// For tokens other than identifiers, which need their session's id.
 	public Token(TokenType typeIn, String lexemeIn, Object literalIn, int lineIn) {
+		this(typeIn, lexemeIn, literalIn, lineIn, -1);
+	}
+
+	Token(TokenType typeIn, String lexemeIn, Object literalIn, int lineIn, int symbolIn) {
 		this.type = typeIn;
 		this.lexeme = lexemeIn;
 		this.literal = literalIn;
 		this.line = lineIn;
+		this.symbol = symbolIn;
 	}
 
 	@Override
@@ -0,0 +1,122 @@
+import java.util.Arrays;
+
+/*
+ * A whole token stream in struct-of-arrays form: token i is described by
+ * types[i] (a TokenType ordinal), starts[i]/lengths[i] (its lexeme in the
+ * text pool) and lines[i]. The few tokens that carry a literal are listed in
+ * a side table sorted by token index, so the common case costs a handful of
+ * array elements instead of a Token, a String and a boxed literal.
+ *
+ * Built by Scanner.scanTokenBuffer(); the Parser reads it back through
+ * cursor(), which materializes one Token at a time.
+ */
+public class TokenBuffer {
+	private static final TokenType[] TYPES = TokenType.values();
+
+	private final Symbols symbols;
+
+	byte[] types = new byte[256];
+	int[] starts = new int[256];
+	int[] lengths = new int[256];
+	int[] lines = new int[256];
+	int count = 0;
+	// Lexeme characters of every token, back to back.
+	private char[] text = new char[1024];
+	private int textLength = 0;
+	// Token indices that have a literal, ascending, and the literals.
+	private int[] literalTokens = new int[16];
+	private Object[] literalValues = new Object[16];
+	private int literalCount = 0;
+
+	TokenBuffer(Symbols symbols) {
+		this.symbols = symbols;
+	}
+
+	void add(TokenType type, char[] chars, int offset, int length, Object literal, int line) {
+		if (count == types.length) {
+			types = Arrays.copyOf(types, count * 2);
+			starts = Arrays.copyOf(starts, count * 2);
+			lengths = Arrays.copyOf(lengths, count * 2);
+			lines = Arrays.copyOf(lines, count * 2);
+		}
+		if (textLength + length > text.length) {
+			text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + length));
+		}
+		System.arraycopy(chars, offset, text, textLength, length);
+		types[count] = (byte) type.ordinal();
+		starts[count] = textLength;
+		lengths[count] = length;
+		lines[count] = line;
+		textLength += length;
+		if (literal != null) {
+			if (literalCount == literalTokens.length) {
+				literalTokens = Arrays.copyOf(literalTokens, literalCount * 2);
+				literalValues = Arrays.copyOf(literalValues, literalCount * 2);
+			}
+			literalTokens[literalCount] = count;
+			literalValues[literalCount] = literal;
+			literalCount++;
+		}
+		count++;
+	}
+
+	int size() {
+		return count;
+	}
+
+	TokenType type(int index) {
+		return TYPES[types[index]];
+	}
+
+	int line(int index) {
+		return lines[index];
+	}
+
+	String lexeme(int index) {
+		String fixed = Scanner.fixedLexeme(type(index));
+		if (fixed != null) {
+			return fixed;
+		}
+		return new String(text, starts[index], lengths[index]);
+	}
+
+	Object literal(int index) {
+		int found = Arrays.binarySearch(literalTokens, 0, literalCount, index);
+		return found >= 0 ? literalValues[found] : null;
+	}
+
+	Token token(int index) {
+		return token(index, literal(index));
+	}
+
+	private Token token(int index, Object literal) {
+		TokenType type = type(index);
+		if (type == TokenType.IDENTIFIER) {
+			int symbol = symbols.intern(text, starts[index], lengths[index]);
+			return new Token(type, symbols.name(symbol), null, lines[index], symbol);
+		}
+		return new Token(type, lexeme(index), literal, lines[index]);
+	}
+
+	// Hands the tokens out in order, repeating the final EOF once the end is
+	// reached. Literals are found with a running index instead of a search.
+	TokenSource cursor() {
+		return new TokenSource() {
+			private int next = 0;
+			private int nextLiteral = 0;
+
+			@Override
+			public Token nextToken() {
+				int index = Math.min(next, count - 1);
+				Object literal = null;
+				if (nextLiteral < literalCount && literalTokens[nextLiteral] == index) {
+					literal = literalValues[nextLiteral++];
+				}
+				if (next < count) {
+					next++;
+				}
+				return token(index, literal);
+			}
+		};
+	}
+}
@@ -0,0 +1,7 @@
+/*
+ * Supplies tokens to the Parser one at a time. After the EOF token has been
+ * returned it keeps returning EOF.
+ */
+interface TokenSource {
+	Token nextToken();
+}
@@ -0,0 +1,47 @@
+/*
+ * Runtime specialization of an Expr.Unary site; see BinaryNode.
+ */
+abstract class UnaryNode {
+
+	abstract Object execute(Expr.Unary site, Object right);
+
+	static Object specializeAndExecute(Expr.Unary site, Object right) {
+		UnaryNode node;
+		if (site.operator.type == TokenType.MINUS && right instanceof Double) {
+			node = new NumberNegate();
+		} else if (site.operator.type == TokenType.NOT) {
+			node = new Not();
+		} else {
+			node = new Generic();
+		}
+		site.specialized = node;
+		return node.execute(site, right);
+	}
+
+	static class Generic extends UnaryNode {
+		@Override
+		Object execute(Expr.Unary site, Object right) {
+			return Interpreter.unary(site.operator, right);
+		}
+	}
+
+	static class NumberNegate extends UnaryNode {
+		@Override
+		Object execute(Expr.Unary site, Object right) {
+			if (right instanceof Double) {
+				return -(double) right;
+			}
+			UnaryNode node = new Generic();
+			site.specialized = node;
+			return node.execute(site, right);
+		}
+	}
+
+	// '!' accepts any operand, so it never needs to generalize.
+	static class Not extends UnaryNode {
+		@Override
+		Object execute(Expr.Unary site, Object right) {
+			return !Interpreter.isTruthy(right);
+		}
+	}
+}
@@ -0,0 +1,202 @@
+/*
+ * Stack-based executor for Chunks produced by the Compiler. Operator
+ * semantics and error messages mirror Interpreter exactly; globals persist
+ * across calls so the REPL behaves the same under either engine.
+ */
+public class VM {
+
+	private final Environment globals = new Environment();
+	private final Output output;
+	private final ErrorReporter reporter;
+
+	public VM() {
+		this(Output.stdout());
+	}
+
+	public VM(Output output) {
+		this(output, new ErrorReporter());
+	}
+
+	public VM(Output output, ErrorReporter reporter) {
+		this.output = output;
+		this.reporter = reporter;
+	}
+
+	public void interpret(Chunk chunk) {
+		try {
+			run(chunk);
+		} catch (RuntimeError error) {
+			output.flush();
+			reporter.runtimeError(error);
+		} finally {
+			output.flush();
+		}
+	}
+
+	private void run(Chunk chunk) {
+		final int[] code = chunk.code;
+		final Object[] constants = chunk.constants;
+		final Object[] locals = new Object[chunk.maxLocals];
+		final Object[] stack = new Object[chunk.maxStack];
+		int sp = 0;
+		int ip = 0;
+
+		for (;;) {
+			int op = code[ip++];
+			switch (op) {
+				case OpCode.CONSTANT:
+					stack[sp++] = constants[code[ip++]];
+					break;
+				case OpCode.NIL:
+					stack[sp++] = null;
+					break;
+				case OpCode.TRUE:
+					stack[sp++] = true;
+					break;
+				case OpCode.FALSE:
+					stack[sp++] = false;
+					break;
+				case OpCode.POP:
+					sp--;
+					break;
+				case OpCode.GET_LOCAL:
+					stack[sp++] = locals[code[ip++]];
+					break;
+				case OpCode.SET_LOCAL:
+					locals[code[ip++]] = stack[sp - 1];
+					break;
+				case OpCode.DEFINE_LOCAL:
+					locals[code[ip++]] = stack[--sp];
+					break;
+				case OpCode.GET_GLOBAL:
+					stack[sp++] = globals.get((Token) constants[code[ip++]]);
+					break;
+				case OpCode.SET_GLOBAL:
+					globals.assign((Token) constants[code[ip++]], stack[sp - 1]);
+					break;
+				case OpCode.DEFINE_GLOBAL:
+					globals.define((Token) constants[code[ip++]], stack[--sp]);
+					break;
+				case OpCode.EQUAL: {
+					Object right = stack[--sp];
+					stack[sp - 1] = Interpreter.isEqual(stack[sp - 1], right);
+					break;
+				}
+				case OpCode.NOT_EQUAL: {
+					Object right = stack[--sp];
+					stack[sp - 1] = !Interpreter.isEqual(stack[sp - 1], right);
+					break;
+				}
+				case OpCode.GREATER: {
+					Object right = stack[--sp];
+					Object left = stack[sp - 1];
+					checkNumberOperands(chunk, ip, left, right);
+					stack[sp - 1] = (double) left > (double) right;
+					break;
+				}
+				case OpCode.GREATER_EQUAL: {
+					Object right = stack[--sp];
+					Object left = stack[sp - 1];
+					checkNumberOperands(chunk, ip, left, right);
+					stack[sp - 1] = (double) left >= (double) right;
+					break;
+				}
+				case OpCode.LESS: {
+					Object right = stack[--sp];
+					Object left = stack[sp - 1];
+					checkNumberOperands(chunk, ip, left, right);
+					stack[sp - 1] = (double) left < (double) right;
+					break;
+				}
+				case OpCode.LESS_EQUAL: {
+					Object right = stack[--sp];
+					Object left = stack[sp - 1];
+					checkNumberOperands(chunk, ip, left, right);
+					stack[sp - 1] = (double) left <= (double) right;
+					break;
+				}
+				case OpCode.ADD: {
+					Object right = stack[--sp];
+					Object left = stack[sp - 1];
+					if (left instanceof Double && right instanceof Double) {
+						stack[sp - 1] = (double) left + (double) right;
+					} else if (left instanceof CharSequence && right instanceof CharSequence) {
+						stack[sp - 1] = Rope.concat((CharSequence) left, (CharSequence) right);
+					} else if (left instanceof CharSequence && right instanceof Double) {
+						stack[sp - 1] = Rope.concat((CharSequence) left, Interpreter.stringify(right));
+					} else if (left instanceof Double && right instanceof CharSequence) {
+						stack[sp - 1] = Rope.concat(Interpreter.stringify(left), (CharSequence) right);
+					} else {
+						throw new RuntimeError(chunk.tokens[ip - 1], "Operands must be two numbers or two strings.");
+					}
+					break;
+				}
+				case OpCode.SUBTRACT: {
+					Object right = stack[--sp];
+					Object left = stack[sp - 1];
+					checkNumberOperands(chunk, ip, left, right);
+					stack[sp - 1] = (double) left - (double) right;
+					break;
+				}
+				case OpCode.MULTIPLY: {
+					Object right = stack[--sp];
+					Object left = stack[sp - 1];
+					checkNumberOperands(chunk, ip, left, right);
+					stack[sp - 1] = (double) left * (double) right;
+					break;
+				}
+				case OpCode.DIVIDE: {
+					Object right = stack[--sp];
+					Object left = stack[sp - 1];
+					checkNumberOperands(chunk, ip, left, right);
+					if ((double) right == 0) {
+						throw new RuntimeError(chunk.tokens[ip - 1], "Cannot divide by zero.");
+					}
+					stack[sp - 1] = (double) left / (double) right;
+					break;
+				}
+				case OpCode.NOT:
+					stack[sp - 1] = !Interpreter.isTruthy(stack[sp - 1]);
+					break;
+				case OpCode.NEGATE: {
+					Object operand = stack[sp - 1];
+					if (!(operand instanceof Double)) {
+						throw new RuntimeError(chunk.tokens[ip - 1], "Operand must be a number.");
+					}
+					stack[sp - 1] = -(double) operand;
+					break;
+				}
+				case OpCode.PRINT:
+					output.printValue(stack[--sp]);
+					break;
+				case OpCode.JUMP: {
+					int offset = code[ip++];
+					ip += offset;
+					break;
+				}
+				case OpCode.JUMP_IF_FALSE: {
+					int offset = code[ip++];
+					if (!Interpreter.isTruthy(stack[sp - 1])) {
+						ip += offset;
+					}
+					break;
+				}
+				case OpCode.LOOP: {
+					int offset = code[ip++];
+					ip -= offset;
+					break;
+				}
+				case OpCode.RETURN:
+					return;
+			}
+		}
+	}
+
+	// ip has already moved past the failing opcode.
+	private void checkNumberOperands(Chunk chunk, int ip, Object left, Object right) {
+		if (left instanceof Double && right instanceof Double) {
+			return;
+		}
+		throw new RuntimeError(chunk.tokens[ip - 1], "Operands must be numbers.");
+	}
+}
@@ -0,0 +1,66 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AstCacheTest {
+	@TempDir
+	Path directory;
+
+	@Test
+	void evictsTheLeastRecentlyUsedEntries() throws IOException {
+		List<Stmt> program = new Parser(new Scanner("var a = 1; print a + 2;")).parse();
+		new AstCache(directory).store("a", program);
+		long size = Files.size(directory.resolve("a.ast"));
+
+		// Room for two entries.
+		AstCache cache = new AstCache(directory, 2 * size);
+		cache.store("b", program);
+		age("a", 3);
+		age("b", 2);
+		assertNotNull(cache.load("a", new Symbols()));
+		cache.store("c", program);
+
+		assertNotNull(cache.load("a", new Symbols()));
+		assertNull(cache.load("b", new Symbols()));
+		assertNotNull(cache.load("c", new Symbols()));
+		try (var entries = Files.list(directory)) {
+			assertEquals(2, entries.count());
+		}
+	}
+
+	// Every single damaged byte past the header must come back as a miss or
+	// a tree, never as an exception, and a miss must take the entry away.
+	@Test
+	void corruptEntriesAreMissesAndDeleted() throws IOException {
+		AstCache cache = new AstCache(directory);
+		cache.store("a", new Parser(new Scanner("var a = \"x\"; { var b = a + 1; print -b; }")).parse());
+		Path entry = directory.resolve("a.ast");
+		byte[] good = Files.readAllBytes(entry);
+		for (int i = 8; i < good.length; i++) {
+			for (int value : new int[] { 0x00, 0x7F, 0xFF }) {
+				byte[] bad = good.clone();
+				bad[i] = (byte) value;
+				Files.write(entry, bad);
+				if (cache.load("a", new Symbols()) == null) {
+					assertFalse(Files.exists(entry), "byte " + i + " = " + value);
+				}
+			}
+		}
+	}
+
+	// Marks an entry as last used that many minutes ago.
+	private void age(String key, int minutes) throws IOException {
+		long then = System.currentTimeMillis() - minutes * 60_000L;
+		Files.setLastModifiedTime(directory.resolve(key + ".ast"), FileTime.fromMillis(then));
+	}
+}
@@ -0,0 +1,94 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+// A tree read back from the cache must run exactly like the one parsed:
+// same shape, token lines, literal types and Literal lines, and the same
+// slots once resolved.
+class AstSerializerTest {
+	private static final String PROGRAM = String.join("\n",
+			"var g = 1;",
+			"var s = \"text\"; var n = nil;",
+			"{",
+			"  var a = g + 2 * (3 - -1);",
+			"  { var b = a; b = b / 4; }",
+			"  var c = true and !false or nil;",
+			"  if (a >= 1.5) print \"x\"; else { print a == c; }",
+			"}",
+			"for (var i = 0; i < 3; i = i + 1) print i;",
+			"for (var j = 0; j < g * 2; j = j + 1) print s;",
+			"while (g <= 0)",
+			"  g = g",
+			"    - 1;",
+			"print \"1\"; print 1; print \"nil\"; print nil; print \"true\"; print true;",
+			"print \"\"; print 0.1; print 123456789.25;");
+
+	private static List<Stmt> parse(String source, Symbols symbols) {
+		return new Parser(new Scanner(source, new ErrorReporter(), symbols)).parse();
+	}
+
+	private static List<Stmt> roundTrip(List<Stmt> statements, Symbols symbols) {
+		return AstSerializer.read(AstSerializer.write(statements), symbols).statements();
+	}
+
+	@Test
+	void readsBackWhatWasWritten() {
+		Symbols symbols = new Symbols();
+		List<Stmt> parsed = parse(PROGRAM, symbols);
+		List<Stmt> read = roundTrip(parsed, symbols);
+		new Resolver().resolve(parsed);
+		new Resolver().resolve(read);
+		assertEquals(TreePrinter.printWithLines(parsed), TreePrinter.printWithLines(read));
+	}
+
+	// The metrics count the same nodes whether a tree was parsed or loaded.
+	@Test
+	void countsTheNodesTheParserCounted() {
+		Symbols symbols = new Symbols();
+		Parser parser = new Parser(new Scanner(PROGRAM, new ErrorReporter(), symbols));
+		List<Stmt> parsed = parser.parse();
+		assertEquals(parser.nodeCount, AstSerializer.read(AstSerializer.write(parsed), symbols).nodes());
+		parser = new Parser(new Scanner("1 + 2 * 3; a = -b;", new ErrorReporter(), symbols));
+		parser.parse();
+		assertEquals(10, parser.nodeCount);
+	}
+
+	@Test
+	void literalsKeepTheirTypes() {
+		Symbols symbols = new Symbols();
+		List<Stmt> read = roundTrip(parse("print 1; print \"1\"; print true; print nil;", symbols), symbols);
+		assertEquals(Double.class, literal(read.get(0)).getClass());
+		assertEquals(String.class, literal(read.get(1)).getClass());
+		assertEquals(Boolean.class, literal(read.get(2)).getClass());
+		assertEquals(null, literal(read.get(3)));
+	}
+
+	// Identifiers are interned into the reading session, as scanned ones are.
+	@Test
+	void identifiersShareTheSessionsNames() {
+		Symbols symbols = new Symbols();
+		List<Stmt> read = roundTrip(parse("var name = 1;", new Symbols()), symbols);
+		Token name = ((Stmt.Var) read.get(0)).name;
+		assertEquals(0, name.symbol);
+		assertSame(symbols.name(symbols.intern("name")), name.lexeme);
+	}
+
+	// Hoisted and fused nodes are written as the nodes they wrap.
+	@Test
+	void writesOptimizedNodesAsTheirOriginals() {
+		Symbols symbols = new Symbols();
+		List<Stmt> parsed = parse(PROGRAM, symbols);
+		new Resolver().resolve(parsed);
+		List<Stmt> optimized = new LoopOptimizer().optimize(parse(PROGRAM, symbols));
+		new Resolver().resolve(optimized);
+		optimized = new Superinstructions().fuse(optimized);
+		assertEquals(AstSerializer.write(parsed), AstSerializer.write(optimized));
+	}
+
+	private static Object literal(Stmt print) {
+		return ((Expr.Literal) ((Stmt.Print) print).expression).value;
+	}
+}
@@ -0,0 +1,79 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+// Every engine must print, report and exit exactly as the tree walker does.
+class EnginesTest {
+	private static final Path CORPUS = Path.of("test", "lox");
+
+	private record Run(String output, String errors, LoxEngine.Result result) {
+	}
+
+	private static Run run(LoxEngine engine, String source) {
+		StringWriter output = new StringWriter();
+		StringWriter errors = new StringWriter();
+		LoxEngine.Result result = engine.run(source, new Output(output), errors);
+		return new Run(output.toString(), errors.toString(), result);
+	}
+
+	static Stream<Path> corpus() throws IOException {
+		return Files.list(CORPUS).filter(path -> path.toString().endsWith(".lox")).sorted();
+	}
+
+	@ParameterizedTest
+	@MethodSource("corpus")
+	void enginesAgreeWithTheTreeWalker(Path script) throws IOException {
+		String source = Files.readString(script);
+		Run expected = run(new LoxEngine("tree", false, false, null), source);
+		for (String backend : List.of("tree", "vm", "jit")) {
+			for (boolean optimize : List.of(false, true)) {
+				Run actual = run(new LoxEngine(backend, optimize, false, null), source);
+				assertEquals(expected, actual, backend + (optimize ? " --optimize" : ""));
+			}
+		}
+		assertEquals(expected, run(new LoxEngine("tree", false, true, null), source), "--specialize");
+		assertEquals(expected, run(new LoxEngine("tree", false, false, false, null), source), "--no-fuse");
+	}
+
+	// One block is one statement, so all of it lands in a single method, far
+	// past the JVM's 64KB limit.
+	@Test
+	void tooLargeForTheJitFallsBackWithAWarning() {
+		String source = "{ var a = 1;" + " a = a + 1;".repeat(8000) + " print a; }";
+		Run jit = run(new LoxEngine("jit", false, false, null), source);
+		assertEquals("8001\n", jit.output());
+		assertEquals(LoxEngine.Result.SUCCESS, jit.result());
+		assertTrue(jit.errors().startsWith("Warning: jit unavailable ("), jit.errors());
+	}
+
+	@Test
+	void unknownConstructsAreNotCompiled() {
+		Expr one = new Expr.Literal(1.0);
+		Stmt comma = new Stmt.Expression(new Expr.Binary(one, new Token(TokenType.COMMA, ",", null, 1), one));
+		JitCompiler.CannotCompile e = assertThrows(JitCompiler.CannotCompile.class,
+				() -> new JitCompiler().compile(List.of(comma)));
+		assertEquals("unsupported operator ','", e.getMessage());
+	}
+
+	@Test
+	void compiledProgramsDoNotWarn() throws IOException {
+		try (Stream<Path> scripts = corpus()) {
+			for (Path script : (Iterable<Path>) scripts::iterator) {
+				Run jit = run(new LoxEngine("jit", false, false, null), Files.readString(script));
+				assertFalse(jit.errors().contains("Warning:"), script.toString());
+			}
+		}
+	}
+}
@@ -0,0 +1,58 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.StringWriter;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class LoopOptimizerTest {
+	private static String print(String source) {
+		List<Stmt> statements = new Parser(new Scanner(source)).parse();
+		new Resolver().resolve(statements);
+		statements = new LoopOptimizer().optimize(statements);
+		new Resolver().resolve(statements);
+		return TreePrinter.print(statements);
+	}
+
+	@Test
+	void hoistsTheBoundOfADesugaredFor() {
+		assertEquals("(block (var i@0 0) (while (< i@0 (invariant (* n k))) "
+				+ "(block (print i@0) (expr (= i@0 (+ i@0 1))))))",
+				print("for (var i = 0; i < n * k; i = i + 1) print i;"));
+	}
+
+	@Test
+	void wrapsOnlyTheMaximalInvariantSubexpression() {
+		assertEquals("(while x (print (invariant (+ (* a b) c))))", print("while (x) print a * b + c;"));
+		assertEquals("(while x (block (print (* (group (invariant (+ a 1))) i)) (expr (= i (+ i 1)))))",
+				print("while (x) { print (a + 1) * i; i = i + 1; }"));
+		assertEquals("(while x (print (invariant (- a))))", print("while (x) print -a;"));
+	}
+
+	@Test
+	void leavesWhatTheLoopChangesAlone() {
+		assertEquals("(while (> n 0) (expr (= n (- n 1))))", print("while (n > 0) n = n - 1;"));
+		assertEquals("(while x (block (var a@0 1) (print (* a@0 2))))",
+				print("while (x) { var a = 1; print a * 2; }"));
+		assertEquals("(while x (print (= a 1)))", print("while (x) print a = 1;"));
+	}
+
+	@Test
+	void hoistsOutOfNestedLoops() {
+		assertEquals("(block (var m@0 3) (while x (block (while y (print (invariant (* m@0 2)))))))",
+				print("{ var m = 3; while (x) { while (y) print m * 2; } }"));
+	}
+
+	// The invariant is evaluated once per entry to the outer loop, but a
+	// runtime error still comes from where the expression is.
+	@Test
+	void invariantsRunLikeTheExpressionsTheyWrap() {
+		StringWriter output = new StringWriter();
+		StringWriter errors = new StringWriter();
+		new LoxEngine("tree", true, false, null).run(
+				"var k = 3; var s = \"x\"; var i = 0;\nwhile (i < 2) { print i * k; i = i + 1; }\nwhile (i < 4) { print\n-s; i = i + 1; }",
+				new Output(output), errors);
+		assertEquals("0\n3\n", output.toString());
+		assertEquals("Operand must be a number.\n[line 4]\n", errors.toString());
+	}
+}
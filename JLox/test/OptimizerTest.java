@@ -0,0 +1,64 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class OptimizerTest {
+	private static List<Stmt> optimize(String source) {
+		List<Stmt> statements = new Parser(new Scanner(source)).parse();
+		new Resolver().resolve(statements);
+		statements = new Optimizer().optimize(statements);
+		new Resolver().resolve(statements);
+		return statements;
+	}
+
+	private static String print(String source) {
+		return TreePrinter.print(optimize(source));
+	}
+
+	@Test
+	void foldsLiteralOperands() {
+		assertEquals("(print 7)", print("print 1 + 2 * 3;"));
+		assertEquals("(print \"ab\")", print("print \"a\" + \"b\";"));
+		assertEquals("(print nil)", print("print !(1 < 2) or nil;"));
+		assertEquals("(print (+ x 3))", print("print x + (1 + 2);"));
+	}
+
+	// Folding stops where the Interpreter would raise, so the error still
+	// comes at run time, from the same operator.
+	@Test
+	void leavesFailingOperatorsAlone() {
+		assertEquals("(print (/ 1 0))", print("print 1 / 0;"));
+		assertEquals("(print (- \"x\"))", print("print -\"x\";"));
+		assertEquals("(print (* \"a1\" 2))", print("print (\"a\" + 1) * 2;"));
+	}
+
+	@Test
+	void propagatesNeverReassignedVariables() {
+		assertEquals("(block (var a@0 2) (print 6))", print("{ var a = 2; print a * 3; }"));
+		assertEquals("(block (var a@0 2) (expr (= a@0 3)) (print a@0))", print("{ var a = 2; a = 3; print a; }"));
+		assertEquals("(var g 1)\n(print 1)", print("var g = 1; print g;"));
+	}
+
+	// The read comes first, so it must still fail as undefined.
+	@Test
+	void neverPropagatesAGlobalReadBeforeItsDeclaration() {
+		assertEquals("(print g)\n(var g 1)", print("print g; var g = 1;"));
+	}
+
+	@Test
+	void prunesBranchesWithConstantConditions() {
+		assertEquals("(print \"y\")", print("if (1 < 2) print \"y\"; else print \"n\";"));
+		assertEquals("(print \"n\")", print("if (nil) print \"y\"; else print \"n\";"));
+		assertEquals("", print("while (false) print 1;"));
+		assertEquals("(while x (print 1))", print("while (x) print 1;"));
+	}
+
+	// A folded literal stands on its operator's line.
+	@Test
+	void foldedLiteralsKeepTheLineOfWhatTheyReplace() {
+		Stmt.Print print = (Stmt.Print) optimize("print\n1\n+\n2;").get(0);
+		assertEquals(3, ((Expr.Literal) print.expression).line);
+	}
+}
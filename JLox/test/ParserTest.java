@@ -0,0 +1,103 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.StringWriter;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+// The precedence-climbing parser must build exactly the trees the
+// recursive-descent grammar in Parser's header describes.
+class ParserTest {
+	private final StringWriter errors = new StringWriter();
+
+	private String parse(String source) {
+		ErrorReporter reporter = new ErrorReporter(errors);
+		List<Stmt> statements = new Parser(new Scanner(source, reporter), reporter).parse();
+		return TreePrinter.print(statements);
+	}
+
+	@Test
+	void factorBindsTighterThanTerm() {
+		assertEquals("(expr (+ 1 (* 2 3)))", parse("1 + 2 * 3;"));
+		assertEquals("(expr (* (group (+ 1 2)) 3))", parse("(1 + 2) * 3;"));
+	}
+
+	// term -> factor (("-" | "+") term)* is right-recursive.
+	@Test
+	void termIsRightAssociative() {
+		assertEquals("(expr (- 10 (- 3 2)))", parse("10 - 3 - 2;"));
+		assertEquals("(expr (+ 1 (- 2 3)))", parse("1 + 2 - 3;"));
+		assertEquals("(expr (- (* 1 2) (+ (* 3 4) 5)))", parse("1 * 2 - 3 * 4 + 5;"));
+	}
+
+	@Test
+	void otherBinaryLevelsAreLeftAssociative() {
+		assertEquals("(expr (/ (/ 8 4) 2))", parse("8 / 4 / 2;"));
+		assertEquals("(expr (< (< 1 2) 3))", parse("1 < 2 < 3;"));
+		assertEquals("(expr (!= (== a b) c))", parse("a == b != c;"));
+		assertEquals("(expr (and (and a b) c))", parse("a and b and c;"));
+		assertEquals("(expr (or (or a b) c))", parse("a or b or c;"));
+	}
+
+	@Test
+	void levelsNestInGrammarOrder() {
+		assertEquals("(expr (or a (and b c)))", parse("a or b and c;"));
+		assertEquals("(expr (and (== a 1) (< b 2)))", parse("a == 1 and b < 2;"));
+		assertEquals("(expr (== (< 1 2) true))", parse("1 < 2 == true;"));
+		assertEquals("(expr (< (+ 1 2) (* 3 4)))", parse("1 + 2 < 3 * 4;"));
+	}
+
+	@Test
+	void unaryBindsTighterThanAnyInfixOperator() {
+		assertEquals("(expr (* (- 1) 2))", parse("-1 * 2;"));
+		assertEquals("(expr (- (! x)))", parse("-!x;"));
+		assertEquals("(expr (- 1 (- 2)))", parse("1 - -2;"));
+	}
+
+	@Test
+	void assignmentIsRightAssociativeAndLoosest() {
+		assertEquals("(expr (= a (= b 1)))", parse("a = b = 1;"));
+		assertEquals("(expr (= a (or 1 2)))", parse("a = 1 or 2;"));
+		assertEquals("(var a (+ 1 2))", parse("var a = 1 + 2;"));
+	}
+
+	@Test
+	void forIsDesugaredToWhile() {
+		assertEquals("(block (var i 0) (while (< i 3) (block (print i) (expr (= i (+ i 1))))))",
+				parse("for (var i = 0; i < 3; i = i + 1) print i;"));
+		assertEquals("(while true (print 1))", parse("for (;;) print 1;"));
+	}
+
+	@Test
+	void statements() {
+		assertEquals("(if a (print 1) (block (print 2)))", parse("if (a) print 1; else { print 2; }"));
+		assertEquals("(while (> n 0) (expr (= n (- n 1))))", parse("while (n > 0) n = n - 1;"));
+		assertEquals("(var a)\n(print \"x\")\n(print nil)", parse("var a; print \"x\"; print nil;"));
+	}
+
+	// The target is kept, the value dropped, and parsing carries on.
+	@Test
+	void invalidAssignmentTargetsAreReportedWithoutStopping() {
+		assertEquals("(expr (+ a b))\n(print 1)", parse("a + b = c; print 1;"));
+		assertEquals("[line 1] Error at '=': Invalid assignment target.\n", errors.toString());
+	}
+
+	// A failed statement leaves a null and parsing resumes at the next one.
+	@Test
+	void recoversAtTheNextStatement() {
+		assertEquals("null\n(print 1)\nnull\n(print 2)", parse("var = 1; print 1;\n1 + ; print 2;"));
+		assertEquals("[line 1] Error at '=': Expect variable name.\n"
+				+ "[line 2] Error at ';': Expect expression.\n", errors.toString());
+	}
+
+	// Parse errors are held back until the source is exhausted, so a scanner
+	// error further on is still reported first.
+	@Test
+	void parseErrorsAreReportedAfterScannerErrors() {
+		parse("print (;\nprint @;\nprint 3");
+		assertEquals("[line 2] Error: Unexpected character.\n"
+				+ "[line 1] Error at ';': Expect expression.\n"
+				+ "[line 2] Error at ';': Expect expression.\n"
+				+ "[line 3] Error at end: Expect ';' after value.\n", errors.toString());
+	}
+}
@@ -0,0 +1,54 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class RopeTest {
+	private static final int APPENDS = 2_000_000;
+
+	// One node per appended char would need several times the test heap.
+	@Test
+	void appendingOneCharAtATimeStaysSmall() {
+		CharSequence text = "";
+		for (int i = 0; i < APPENDS; i++) {
+			text = Rope.concat(text, i % 2 == 0 ? "a" : "b");
+		}
+		assertEquals(APPENDS, text.length());
+		String flat = text.toString();
+		assertEquals("abab", flat.substring(0, 4));
+		assertEquals("ab", flat.substring(APPENDS - 2));
+	}
+
+	@Test
+	void prependingOneCharAtATimeStaysSmall() {
+		CharSequence text = "";
+		for (int i = 0; i < APPENDS; i++) {
+			text = Rope.concat(i % 2 == 0 ? "a" : "b", text);
+		}
+		assertEquals(APPENDS, text.length());
+		String flat = text.toString();
+		assertEquals("baba", flat.substring(0, 4));
+		assertEquals("ba", flat.substring(APPENDS - 2));
+	}
+
+	// Short and long pieces, added at either end, against plain Strings.
+	@Test
+	void mixedJoinsKeepEveryChar() {
+		String expected = "";
+		CharSequence text = "";
+		for (int i = 0; i < 2000; i++) {
+			String piece = Integer.toString(i).repeat(i % 7 == 0 ? 30 : 1);
+			if (i % 5 == 0) {
+				expected = piece + expected;
+				text = Rope.concat(piece, text);
+			} else {
+				expected = expected + piece;
+				text = Rope.concat(text, piece);
+			}
+			if (i % 11 == 0) {
+				expected = expected + expected.substring(0, Math.min(expected.length(), 90));
+				text = Rope.concat(text, text.toString().substring(0, Math.min(text.length(), 90)));
+			}
+		}
+		assertEquals(expected, text.toString());
+	}
+}
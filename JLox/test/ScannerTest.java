@@ -0,0 +1,38 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class ScannerTest {
+	// The only token types whose text varies.
+	private static final EnumSet<TokenType> VARYING = EnumSet.of(TokenType.IDENTIFIER, TokenType.STRING,
+			TokenType.NUMBER, TokenType.EOF);
+
+	@Test
+	void everyFixedTokenTypeHasASharedLexeme() {
+		for (TokenType type : TokenType.values()) {
+			if (VARYING.contains(type)) {
+				assertNull(Scanner.fixedLexeme(type), type.name());
+			} else {
+				assertNotNull(Scanner.fixedLexeme(type), type.name());
+			}
+		}
+	}
+
+	// Scanning the shared lexeme gives back that type and that very String,
+	// so fixed tokens never allocate their text.
+	@Test
+	void fixedTokensReuseTheSharedLexeme() {
+		for (TokenType type : EnumSet.complementOf(VARYING)) {
+			String lexeme = Scanner.fixedLexeme(type);
+			List<Token> tokens = new Scanner(new String(lexeme)).scanTokens();
+			assertEquals(type, tokens.get(0).type, lexeme);
+			assertSame(lexeme, tokens.get(0).lexeme, lexeme);
+		}
+	}
+}
@@ -0,0 +1,61 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.StringWriter;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class SuperinstructionsTest {
+	private static String print(String source) {
+		List<Stmt> statements = new Parser(new Scanner(source)).parse();
+		new Resolver().resolve(statements);
+		statements = new Superinstructions().fuse(statements);
+		new Resolver().resolve(statements);
+		return TreePrinter.print(statements);
+	}
+
+	@Test
+	void fusesACountingLoop() {
+		assertEquals("(block (var i@0 0) (numeric (while (compare< i@0 10) "
+				+ "(block (print i@0) (expr (increment i@0 1))))))",
+				print("for (var i = 0; i < 10; i = i + 1) print i;"));
+		assertEquals("(block (var a@0 1) (var b@1 2) (numeric (while (compare<= a@0 b@1) (expr (increment a@0 -1)))))",
+				print("{ var a = 1; var b = 2; while (a <= b) a = a - 1; }"));
+	}
+
+	// Only "v = v + constant" and "v = v - constant" are increments.
+	@Test
+	void fusesIncrementsOfTheSameVariableByANumber() {
+		assertEquals("(expr (increment i 2))", print("i = i + 2;"));
+		assertEquals("(expr (= i (+ 2 i)))", print("i = 2 + i;"));
+		assertEquals("(expr (= i (+ j 1)))", print("i = j + 1;"));
+		assertEquals("(expr (= i (+ i \"x\")))", print("i = i + \"x\";"));
+		assertEquals("(expr (= i (* i 2)))", print("i = i * 2;"));
+	}
+
+	// A constant only fuses on the right; equality never does.
+	@Test
+	void fusesComparisonsOfVariablesAndConstants() {
+		assertEquals("(print (compare>= i 1.5))", print("print i >= 1.5;"));
+		assertEquals("(print (> 10 i))", print("print 10 > i;"));
+		assertEquals("(print (< i (+ j 1)))", print("print i < j + 1;"));
+		assertEquals("(print (== a b))", print("print a == b;"));
+	}
+
+	@Test
+	void onlyLoopsOnAFusedComparisonAreNumeric() {
+		assertEquals("(while x (print 1))", print("while (x) print 1;"));
+		assertEquals("(while (< i (+ 1 2)) (print 1))", print("while (i < 1 + 2) print 1;"));
+	}
+
+	// A fused node meeting a non-number finishes on its original node.
+	@Test
+	void nonNumbersFallBackToTheOriginalNode() {
+		StringWriter output = new StringWriter();
+		StringWriter errors = new StringWriter();
+		new LoxEngine("tree", false, false, null).run(
+				"var i = \"a\"; i = i + 1; print i;\nwhile (i < 3) i = i + 1;", new Output(output), errors);
+		assertEquals("a1\n", output.toString());
+		assertEquals("Operands must be numbers.\n[line 2]\n", errors.toString());
+	}
+}
@@ -0,0 +1,50 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.StringWriter;
+
+import org.junit.jupiter.api.Test;
+
+class SymbolsTest {
+	@Test
+	void internsEachNameOnce() {
+		Symbols symbols = new Symbols();
+		assertEquals(0, symbols.intern("a"));
+		assertEquals(1, symbols.intern("b"));
+		assertEquals(0, symbols.intern(new String("a")));
+		assertSame(symbols.name(0), symbols.name(symbols.intern("a")));
+	}
+
+	@Test
+	void keepsIdsThroughRehashing() {
+		Symbols symbols = new Symbols();
+		for (int i = 0; i < 10_000; i++) {
+			assertEquals(i, symbols.intern("name" + i));
+		}
+		for (int i = 0; i < 10_000; i++) {
+			assertEquals(i, symbols.intern("name" + i));
+			assertEquals("name" + i, symbols.name(i));
+		}
+	}
+
+	// Names one session interned mean nothing to the next.
+	@Test
+	void sessionsDoNotShareIds() {
+		LoxEngine engine = new LoxEngine("tree", false, false, null);
+		StringBuilder names = new StringBuilder();
+		for (int i = 0; i < 10_000; i++) {
+			names.append("var v").append(i).append(" = ").append(i).append(";\n");
+		}
+		StringWriter first = new StringWriter();
+		engine.open(new Output(first), new StringWriter()).run(names + "print v9999;");
+		assertEquals("9999\n", first.toString());
+
+		StringWriter second = new StringWriter();
+		StringWriter errors = new StringWriter();
+		LoxSession session = engine.open(new Output(second), errors);
+		session.run("var late = 1;");
+		session.run("print late; print v9999;");
+		assertEquals("1\n", second.toString());
+		assertEquals("Undefined variable 'v9999'.\n[line 1]\n", errors.toString());
+	}
+}
@@ -0,0 +1,171 @@
+import java.util.List;
+
+/*
+ * Prints trees as S-expressions, for tests to compare with the tree they
+ * expect: "1 + 2 * 3;" is (expr (+ 1 (* 2 3))). A resolved local prints its
+ * frame slot after the name (a@0); fused and hoisted nodes print as
+ * themselves, so a test can see that a pass produced them. printWithLines
+ * also suffixes every name, operator and literal with its line (a:3).
+ */
+class TreePrinter implements Expr.Visitor<String>, Stmt.Visitor<String> {
+	private final boolean lines;
+
+	private TreePrinter(boolean lines) {
+		this.lines = lines;
+	}
+
+	static String print(List<Stmt> statements) {
+		return print(statements, false);
+	}
+
+	static String printWithLines(List<Stmt> statements) {
+		return print(statements, true);
+	}
+
+	private static String print(List<Stmt> statements, boolean lines) {
+		TreePrinter printer = new TreePrinter(lines);
+		StringBuilder out = new StringBuilder();
+		for (Stmt statement : statements) {
+			if (out.length() > 0) {
+				out.append('\n');
+			}
+			out.append(statement == null ? "null" : statement.accept(printer));
+		}
+		return out.toString();
+	}
+
+	private String parenthesize(String name, Object... parts) {
+		StringBuilder out = new StringBuilder("(").append(name);
+		for (Object part : parts) {
+			out.append(' ');
+			if (part instanceof Expr expr) {
+				out.append(expr.accept(this));
+			} else if (part instanceof Stmt stmt) {
+				out.append(stmt.accept(this));
+			} else {
+				out.append(part);
+			}
+		}
+		return out.append(')').toString();
+	}
+
+	private String local(Token name, int slot) {
+		return token(name) + (slot >= 0 ? "@" + slot : "");
+	}
+
+	private String token(Token token) {
+		return lines ? token.lexeme + ":" + token.line : token.lexeme;
+	}
+
+	private static String number(double value) {
+		String text = Double.toString(value);
+		return text.endsWith(".0") ? text.substring(0, text.length() - 2) : text;
+	}
+
+	@Override
+	public String visitBlockStmt(Stmt.Block stmt) {
+		return parenthesize("block", stmt.statements.toArray());
+	}
+
+	@Override
+	public String visitExpressionStmt(Stmt.Expression stmt) {
+		return parenthesize("expr", stmt.expression);
+	}
+
+	@Override
+	public String visitIfStmt(Stmt.If stmt) {
+		if (stmt.elseBranch == null) {
+			return parenthesize("if", stmt.condition, stmt.thenBranch);
+		}
+		return parenthesize("if", stmt.condition, stmt.thenBranch, stmt.elseBranch);
+	}
+
+	@Override
+	public String visitVarStmt(Stmt.Var stmt) {
+		String name = local(stmt.name, stmt.slot);
+		if (stmt.initializer == null) {
+			return parenthesize("var", name);
+		}
+		return parenthesize("var", name, stmt.initializer);
+	}
+
+	@Override
+	public String visitPrintStmt(Stmt.Print stmt) {
+		return parenthesize("print", stmt.expression);
+	}
+
+	@Override
+	public String visitWhileStmt(Stmt.While stmt) {
+		return parenthesize("while", stmt.condition, stmt.body);
+	}
+
+	@Override
+	public String visitNumericWhileStmt(Stmt.NumericWhile stmt) {
+		return parenthesize("numeric", stmt.loop);
+	}
+
+	@Override
+	public String visitAssignExpr(Expr.Assign expr) {
+		return parenthesize("=", local(expr.name, expr.slot), expr.value);
+	}
+
+	@Override
+	public String visitBinaryExpr(Expr.Binary expr) {
+		return parenthesize(token(expr.operator), expr.left, expr.right);
+	}
+
+	@Override
+	public String visitGroupingExpr(Expr.Grouping expr) {
+		return parenthesize("group", expr.expression);
+	}
+
+	@Override
+	public String visitLiteralExpr(Expr.Literal expr) {
+		String value;
+		if (expr.value == null) {
+			value = "nil";
+		} else if (expr.value instanceof Double number) {
+			value = number(number);
+		} else if (expr.value instanceof CharSequence) {
+			value = "\"" + expr.value + "\"";
+		} else {
+			value = expr.value.toString();
+		}
+		return lines ? value + ":" + expr.line : value;
+	}
+
+	@Override
+	public String visitLogicalExpr(Expr.Logical expr) {
+		return parenthesize(token(expr.operator), expr.left, expr.right);
+	}
+
+	@Override
+	public String visitVariableExpr(Expr.Variable expr) {
+		return local(expr.name, expr.slot);
+	}
+
+	@Override
+	public String visitUnaryExpr(Expr.Unary expr) {
+		return parenthesize(token(expr.operator), expr.right);
+	}
+
+	@Override
+	public String visitInvariantExpr(Expr.Invariant expr) {
+		return parenthesize("invariant", expr.expression);
+	}
+
+	@Override
+	public String visitIncrementExpr(Expr.Increment expr) {
+		return parenthesize("increment", local(expr.assign.name, expr.assign.slot), number(expr.delta));
+	}
+
+	@Override
+	public String visitCompareVariablesExpr(Expr.CompareVariables expr) {
+		return parenthesize("compare" + expr.binary.operator.lexeme, expr.left, expr.right);
+	}
+
+	@Override
+	public String visitCompareConstantExpr(Expr.CompareConstant expr) {
+		return parenthesize("compare" + expr.binary.operator.lexeme, expr.left, number(expr.right));
+	}
+}
@@ -0,0 +1,59 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.StringWriter;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+// What EnginesTest can't see from the outside: how the Compiler sizes a
+// Chunk, and the VM's behaviour across runs of one session.
+class VMTest {
+	private static Chunk compile(String source) {
+		List<Stmt> statements = new Parser(new Scanner(source)).parse();
+		new Resolver().resolve(statements);
+		return new Compiler().compile(statements);
+	}
+
+	@Test
+	void sizesTheStackByTheDeepestExpression() {
+		assertEquals(1, compile("print 1;").maxStack);
+		// Right-nested, so every operand waits on the stack.
+		assertEquals(4, compile("print 1 + (2 + (3 + 4));").maxStack);
+		assertEquals(2, compile("print ((1 + 2) + 3) + 4;").maxStack);
+	}
+
+	// Sibling blocks reuse the slots their predecessors released.
+	@Test
+	void sizesTheFrameBySlotsLiveAtOnce() {
+		assertEquals(0, compile("var g = 1;").maxLocals);
+		assertEquals(3, compile("{ var a = 1; { var b = 2; } { var c = 3; var d = 4; } }").maxLocals);
+	}
+
+	@Test
+	void runtimeErrorsReportTheOperatorsLine() {
+		StringWriter errors = new StringWriter();
+		LoxEngine.Result result = new LoxEngine("vm", false, false, null).run("var a = 1;\nprint a\n+\n\"x\" * 2;",
+				new Output(new StringWriter()), errors);
+		assertEquals(LoxEngine.Result.RUNTIME_ERROR, result);
+		assertEquals("Operands must be numbers.\n[line 4]\n", errors.toString());
+	}
+
+	@Test
+	void globalsPersistAcrossRuns() {
+		StringWriter output = new StringWriter();
+		LoxSession session = new LoxEngine("vm", false, false, null).open(new Output(output), new StringWriter());
+		session.run("var a = 1;");
+		session.run("a = a + 1;");
+		session.run("{ var b = 10; print a + b; }");
+		assertEquals("12\n", output.toString());
+	}
+
+	@Test
+	void logicalOperatorsShortCircuit() {
+		StringWriter output = new StringWriter();
+		new LoxEngine("vm", false, false, null).run(
+				"var n = 0; print true or (n = 1); print false and (n = 2); print nil or \"x\"; print n;",
+				new Output(output), new StringWriter());
+		assertEquals("true\nfalse\nx\n0\n", output.toString());
+	}
+}
@@ -12,24 +12,29 @@ public class GenerateAst {
 		String outputDir = args[0];
 		try {
 			defineAst(outputDir, "Expr", Arrays.asList(
-					"Assign	: Token name, Expr value",
-					"Binary	: Expr left, Token operator, Expr right",
+					"Assign	: Token name, Expr value	: int depth = -1, int slot = -1",
+					"Binary	: Expr left, Token operator, Expr right	: BinaryNode specialized = null",
 					"Grouping	: Expr expression",
-					"Literal	: Object value",
+					"Literal	: Object value	: int line = 0",
 					"Logical	: Expr left, Token operator, Expr right",
-					"Variable	: Token name",
-					"Unary	: Token operator, Expr right"));
+					"Variable	: Token name	: int depth = -1, int slot = -1",
+					"Unary	: Token operator, Expr right	: UnaryNode specialized = null",
+					"Invariant	: Expr expression	: Object value = null, boolean cached = false",
+					"Increment	: Assign assign, Variable variable, double delta",
+					"CompareVariables	: Binary binary, Variable left, Variable right",
+					"CompareConstant	: Binary binary, Variable left, double right"));
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 		try {
 			defineAst(outputDir, "Stmt", Arrays.asList(
-					"Block	: List<Stmt> statements",
+					"Block	: List<Stmt> statements	: int slots = 0",
 					"Expression	: Expr expression",
 					"If	: Expr condition, Stmt thenBranch," + " Stmt elseBranch",
-					"Var	: Token name, Expr initializer",
+					"Var	: Token name, Expr initializer	: int slot = -1, boolean reassigned = false",
 					"Print	: Expr expression",
-					"While	: Expr condition, Stmt body"));
+					"While	: Expr condition, Stmt body	: List<Expr.Invariant> invariants = null",
+					"NumericWhile	: While loop"));
 
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -46,7 +51,10 @@ public class GenerateAst {
 		for (String type : typesIn) {
 			String className = type.split(":")[0].trim();
 			String fields = type.split(":")[1].trim();
-			defineType(writer, baseNameIn, className, fields);
+			// An optional third section lists mutable fields filled in after parsing,
+			// by the Resolver or by self-specializing execution.
+			String resolved = type.split(":").length > 2 ? type.split(":")[2].trim() : null;
+			defineType(writer, baseNameIn, className, fields, resolved);
 		}
 		writer.println();
 		writer.println(" abstract <R> R accept(Visitor<R> visitor);");
@@ -64,7 +72,8 @@ public class GenerateAst {
 		writerIn.println(" }");
 	}
 
-	public static void defineType(PrintWriter writerIn, String baseNameIn, String classNameIn, String fieldListIn) {
+	public static void defineType(PrintWriter writerIn, String baseNameIn, String classNameIn, String fieldListIn,
+			String resolvedListIn) {
 		writerIn.println(" public static class " + classNameIn + " extends " + baseNameIn + " {");
 		writerIn.println("	" + classNameIn + "(" + fieldListIn + ") {");
 		String[] fields = fieldListIn.split(", ");
@@ -84,6 +93,12 @@ public class GenerateAst {
 		for (String field : fields) {
 			writerIn.println("	final " + field + ";");
 		}
+		if (resolvedListIn != null) {
+			writerIn.println();
+			for (String field : resolvedListIn.split(", ")) {
+				writerIn.println("	" + field + ";");
+			}
+		}
 		writerIn.println("	}");
 	}
 }